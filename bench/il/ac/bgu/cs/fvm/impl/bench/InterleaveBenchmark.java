@@ -0,0 +1,39 @@
+package il.ac.bgu.cs.fvm.impl.bench;
+
+import il.ac.bgu.cs.fvm.impl.FvmFacadeImpl;
+import il.ac.bgu.cs.fvm.transitionsystem.TransitionSystem;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Builds dining philosophers with {@link FvmFacadeImpl#interleave}. With 2 to
+ * 7 philosophers, the final product ranges from tens to about 10^5 states.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx8g"})
+public class InterleaveBenchmark {
+
+    @Param({"2", "4", "6", "7"})
+    public int philosophers;
+
+    private final FvmFacadeImpl fvm = new FvmFacadeImpl();
+
+    @Benchmark
+    public TransitionSystem<Object, String, String> diningPhilosophers() {
+        return Models.diningPhilosophers(fvm, philosophers);
+    }
+}
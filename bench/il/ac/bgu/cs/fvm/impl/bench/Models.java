@@ -0,0 +1,139 @@
+package il.ac.bgu.cs.fvm.impl.bench;
+
+import il.ac.bgu.cs.fvm.impl.FvmFacadeImpl;
+import il.ac.bgu.cs.fvm.transitionsystem.Transition;
+import il.ac.bgu.cs.fvm.transitionsystem.TransitionSystem;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Parameterized transition systems for the benchmarks. Every generated system
+ * has states {@code 0..n-1}, initial state 0, and proposition {@code "even"}
+ * on even states.
+ */
+final class Models {
+    static final String[] ACTIONS = {"a", "b", "c"};
+
+    private Models() {
+    }
+
+    static TransitionSystem<Integer, String, String> create(FvmFacadeImpl fvm, String backend, String shape, int size) {
+        TransitionSystem<Integer, String, String> ts = "compact".equals(backend) ? fvm.createCompactTransitionSystem() : fvm.createTransitionSystem();
+        ts.setName(shape + "-" + size);
+        for (String a : ACTIONS) {
+            ts.addAction(a);
+        }
+        ts.addAtomicProposition("even");
+        ts.addAtomicProposition("marked");
+        for (int i = 0; i < size; i++) {
+            ts.addState(i);
+            if (i % 2 == 0) {
+                ts.addToLabel(i, "even");
+            }
+        }
+        ts.setInitial(0, true);
+        switch (shape) {
+            case "ring":
+                for (int i = 0; i < size; i++) {
+                    ts.addTransition(new Transition<>(i, "a", (i + 1) % size));
+                }
+                break;
+            case "grid":
+                int side = (int) Math.ceil(Math.sqrt(size));
+                for (int i = 0; i < size; i++) {
+                    if ((i + 1) % side != 0 && i + 1 < size) {
+                        ts.addTransition(new Transition<>(i, "a", i + 1));
+                    }
+                    if (i + side < size) {
+                        ts.addTransition(new Transition<>(i, "b", i + side));
+                    }
+                }
+                break;
+            case "random":
+                Random random = new Random(size);
+                for (int i = 0; i < size; i++) {
+                    for (int d = 0; d < 3; d++) {
+                        ts.addTransition(new Transition<>(i, ACTIONS[random.nextInt(ACTIONS.length)], random.nextInt(size)));
+                    }
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown shape: " + shape);
+        }
+        return ts;
+    }
+
+    static TransitionSystem<String, String, String> philosopher(FvmFacadeImpl fvm, int i, int count) {
+        String left = "f" + i;
+        String right = "f" + (i + 1) % count;
+        TransitionSystem<String, String, String> ts = fvm.createTransitionSystem();
+        ts.setName("philosopher" + i);
+        for (String s : new String[]{"think", "left", "eat"}) {
+            ts.addState(s);
+        }
+        ts.setInitial("think", true);
+        String[] actions = {take(i, left), take(i, right), release(i, left, right)};
+        for (String a : actions) {
+            ts.addAction(a);
+        }
+        ts.addTransition(new Transition<>("think", actions[0], "left"));
+        ts.addTransition(new Transition<>("left", actions[1], "eat"));
+        ts.addTransition(new Transition<>("eat", actions[2], "think"));
+        ts.addAtomicProposition("eating" + i);
+        ts.addToLabel("eat", "eating" + i);
+        return ts;
+    }
+
+    static TransitionSystem<String, String, String> fork(FvmFacadeImpl fvm, int j, int count) {
+        String fork = "f" + j;
+        int owner = j;
+        int neighbour = (j - 1 + count) % count;
+        TransitionSystem<String, String, String> ts = fvm.createTransitionSystem();
+        ts.setName("fork" + j);
+        ts.addState("free");
+        ts.addState("taken");
+        ts.setInitial("free", true);
+        for (int p : new int[]{owner, neighbour}) {
+            String take = take(p, fork);
+            String release = release(p, "f" + p, "f" + (p + 1) % count);
+            ts.addAction(take);
+            ts.addAction(release);
+            ts.addTransition(new Transition<>("free", take, "taken"));
+            ts.addTransition(new Transition<>("taken", release, "free"));
+        }
+        return ts;
+    }
+
+    /**
+     * Builds dining philosophers by interleaving philosophers and forks one at
+     * a time, handshaking on the actions the two sides share.
+     */
+    @SuppressWarnings("unchecked")
+    static TransitionSystem<Object, String, String> diningPhilosophers(FvmFacadeImpl fvm, int count) {
+        TransitionSystem<Object, String, String> result = (TransitionSystem<Object, String, String>) (TransitionSystem<?, String, String>) philosopher(fvm, 0, count);
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                result = combine(fvm, result, philosopher(fvm, i, count));
+            }
+            result = combine(fvm, result, fork(fvm, i, count));
+        }
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static TransitionSystem<Object, String, String> combine(FvmFacadeImpl fvm, TransitionSystem<Object, String, String> left, TransitionSystem<String, String, String> right) {
+        Set<String> shared = new HashSet<>(left.getActions());
+        shared.retainAll(right.getActions());
+        return (TransitionSystem<Object, String, String>) (TransitionSystem<?, String, String>) fvm.interleave(left, right, shared);
+    }
+
+    private static String take(int philosopher, String fork) {
+        return "p" + philosopher + ".take." + fork;
+    }
+
+    private static String release(int philosopher, String left, String right) {
+        return "p" + philosopher + ".release." + left + "." + right;
+    }
+}
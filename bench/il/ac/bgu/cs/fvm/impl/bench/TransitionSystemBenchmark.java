@@ -0,0 +1,174 @@
+package il.ac.bgu.cs.fvm.impl.bench;
+
+import il.ac.bgu.cs.fvm.impl.FvmFacadeImpl;
+import il.ac.bgu.cs.fvm.impl.ImageComputer;
+import il.ac.bgu.cs.fvm.transitionsystem.TransitionSystem;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the {@link FvmFacadeImpl} queries on generated systems of
+ * 10^2 to 10^6 states, for both transition-system backends, and of the
+ * {@link ImageComputer} images and fixpoints over a snapshot of the same
+ * systems. The wide frontier holds every other state, enough to split the
+ * parallel images across the fork-join pool.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx8g"})
+public class TransitionSystemBenchmark {
+
+    @Param({"ring", "grid", "random"})
+    public String shape;
+
+    @Param({"100", "10000", "1000000"})
+    public int size;
+
+    @Param({"hash", "compact"})
+    public String backend;
+
+    private final FvmFacadeImpl fvm = new FvmFacadeImpl();
+    private TransitionSystem<Integer, String, String> ts;
+    private Set<Integer> frontier;
+    private ImageComputer<Integer, String> images;
+    private ImageComputer<Integer, String> parallelImages;
+    private BitSet frontierBits;
+    private BitSet wideFrontierBits;
+    private BitSet into;
+    private int[] probes;
+    private int cursor;
+
+    @Setup(Level.Trial)
+    public void build() {
+        ts = Models.create(fvm, backend, shape, size);
+        Random random = new Random(42);
+        probes = new int[1024];
+        for (int i = 0; i < probes.length; i++) {
+            probes[i] = random.nextInt(size);
+        }
+        frontier = new HashSet<>();
+        for (int i = 0; i < Math.min(size, 64); i++) {
+            frontier.add(probes[i]);
+        }
+        images = fvm.imageComputer(ts, false);
+        parallelImages = fvm.imageComputer(ts, true);
+        frontierBits = images.encode(frontier);
+        wideFrontierBits = new BitSet(images.stateCount());
+        for (int id = 0; id < images.stateCount(); id += 2) {
+            wideFrontierBits.set(id);
+        }
+        into = new BitSet(size);
+    }
+
+    private int nextState() {
+        cursor = (cursor + 1) & (probes.length - 1);
+        return probes[cursor];
+    }
+
+    @Benchmark
+    public Set<Integer> post() {
+        return fvm.post(ts, nextState());
+    }
+
+    @Benchmark
+    public Set<Integer> postByAction() {
+        return fvm.post(ts, nextState(), "a");
+    }
+
+    @Benchmark
+    public Set<Integer> pre() {
+        return fvm.pre(ts, nextState());
+    }
+
+    @Benchmark
+    public Set<Integer> postFrontier() {
+        return fvm.post(ts, frontier);
+    }
+
+    @Benchmark
+    public Set<Integer> preFrontier() {
+        return fvm.pre(ts, frontier);
+    }
+
+    @Benchmark
+    public boolean isStateTerminal() {
+        return fvm.isStateTerminal(ts, nextState());
+    }
+
+    @Benchmark
+    public Set<Integer> reach() {
+        return fvm.reach(ts);
+    }
+
+    @Benchmark
+    public Set<Integer> parallelReach() {
+        return fvm.reach(ts, true);
+    }
+
+    @Benchmark
+    public BitSet imagePost() {
+        return images.post(frontierBits, into);
+    }
+
+    @Benchmark
+    public BitSet imagePre() {
+        return images.pre(frontierBits, into);
+    }
+
+    @Benchmark
+    public BitSet imagePostWide() {
+        return images.post(wideFrontierBits, into);
+    }
+
+    @Benchmark
+    public BitSet parallelImagePostWide() {
+        return parallelImages.post(wideFrontierBits, into);
+    }
+
+    @Benchmark
+    public BitSet imageReach() {
+        return images.reach();
+    }
+
+    @Benchmark
+    public BitSet parallelImageReach() {
+        return parallelImages.reach();
+    }
+
+    @Benchmark
+    public BitSet imageBackwardReach() {
+        return images.backwardReach(frontierBits);
+    }
+
+    @Benchmark
+    public boolean isActionDeterministic() {
+        return fvm.isActionDeterministic(ts);
+    }
+
+    @Benchmark
+    public int labelRoundTrip() {
+        int s = nextState();
+        ts.addToLabel(s, "marked");
+        ts.removeLabel(s, "marked");
+        return s;
+    }
+}
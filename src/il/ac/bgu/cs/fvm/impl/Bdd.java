@@ -0,0 +1,505 @@
+package il.ac.bgu.cs.fvm.impl;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A reduced ordered BDD package. Nodes are ints: {@link #FALSE}, {@link #TRUE}
+ * and indexes into parallel arrays of (level, low, high). The variable at
+ * level 0 is the topmost.
+ * <p>
+ * A unique table (hash chains threaded through the node arrays) keeps one
+ * node per (level, low, high), so equal functions are equal ints. Operation
+ * results go to a direct-mapped cache that overwrites on collision.
+ * <p>
+ * Garbage collection is mark-and-sweep from the nodes whose reference count
+ * ({@link #ref}, {@link #deref}) is positive. It only runs when asked to, by
+ * {@link #gc} or {@link #maybeGc}, never inside an operation, so a result is
+ * safe to use until the next collection even if nobody referenced it.
+ * Callers collect between the steps of a long computation, having
+ * referenced what they still need. Between collections the node arrays grow
+ * as needed.
+ * <p>
+ * Not thread-safe.
+ */
+public final class Bdd {
+    public static final int FALSE = 0;
+    public static final int TRUE = 1;
+
+    private static final int INITIAL_NODES = 1 << 16;
+    private static final int CACHE_SIZE = 1 << 18;
+
+    private static final int OP_AND = 1;
+    private static final int OP_OR = 2;
+    private static final int OP_XOR = 3;
+    private static final int OP_NOT = 4;
+    private static final int OP_EXISTS = 5;
+    private static final int OP_RELPROD = 6;
+    private static final int OP_REPLACE = 7;
+
+    private final int varCount;
+    private int[] level;
+    private int[] low;
+    private int[] high;
+    private int[] next;
+    private int[] refs;
+    private int[] buckets;
+    private int free;
+    private int live;
+    private int gcThreshold = INITIAL_NODES / 2;
+    private int renamings;
+
+    private final int[] cacheOp = new int[CACHE_SIZE];
+    private final int[] cacheA = new int[CACHE_SIZE];
+    private final int[] cacheB = new int[CACHE_SIZE];
+    private final int[] cacheC = new int[CACHE_SIZE];
+    private final int[] cacheResult = new int[CACHE_SIZE];
+
+    private final int[] vars;
+
+    Bdd(int varCount) {
+        this.varCount = varCount;
+        level = new int[INITIAL_NODES];
+        low = new int[INITIAL_NODES];
+        high = new int[INITIAL_NODES];
+        next = new int[INITIAL_NODES];
+        refs = new int[INITIAL_NODES];
+        buckets = new int[INITIAL_NODES];
+        level[FALSE] = varCount;
+        level[TRUE] = varCount;
+        for (int n = INITIAL_NODES - 1; n >= 2; n--) {
+            level[n] = -1;
+            next[n] = free;
+            free = n;
+        }
+        vars = new int[varCount];
+        for (int v = 0; v < varCount; v++) {
+            vars[v] = ref(mk(v, FALSE, TRUE));
+        }
+    }
+
+    public int varCount() {
+        return varCount;
+    }
+
+    /**
+     * The function that is true exactly when variable {@code level} is.
+     */
+    public int var(int level) {
+        return vars[level];
+    }
+
+    int level(int node) {
+        return level[node];
+    }
+
+    int low(int node) {
+        return low[node];
+    }
+
+    int high(int node) {
+        return high[node];
+    }
+
+    public int not(int a) {
+        if (a < 2) {
+            return a ^ 1;
+        }
+        int slot = slot(OP_NOT, a, 0, 0);
+        if (hit(slot, OP_NOT, a, 0, 0)) {
+            return cacheResult[slot];
+        }
+        return store(slot, OP_NOT, a, 0, 0, mk(level[a], not(low[a]), not(high[a])));
+    }
+
+    public int and(int a, int b) {
+        if (a == FALSE || b == FALSE) {
+            return FALSE;
+        }
+        if (a == TRUE || a == b) {
+            return b;
+        }
+        if (b == TRUE) {
+            return a;
+        }
+        return apply(OP_AND, Math.min(a, b), Math.max(a, b));
+    }
+
+    public int or(int a, int b) {
+        if (a == TRUE || b == TRUE) {
+            return TRUE;
+        }
+        if (a == FALSE || a == b) {
+            return b;
+        }
+        if (b == FALSE) {
+            return a;
+        }
+        return apply(OP_OR, Math.min(a, b), Math.max(a, b));
+    }
+
+    public int xor(int a, int b) {
+        if (a == b) {
+            return FALSE;
+        }
+        if (a == FALSE) {
+            return b;
+        }
+        if (b == FALSE) {
+            return a;
+        }
+        if (a == TRUE) {
+            return not(b);
+        }
+        if (b == TRUE) {
+            return not(a);
+        }
+        return apply(OP_XOR, Math.min(a, b), Math.max(a, b));
+    }
+
+    public int imp(int a, int b) {
+        return or(not(a), b);
+    }
+
+    public int biimp(int a, int b) {
+        return not(xor(a, b));
+    }
+
+    public int ite(int f, int g, int h) {
+        return or(and(f, g), and(not(f), h));
+    }
+
+    private int apply(int op, int a, int b) {
+        int slot = slot(op, a, b, 0);
+        if (hit(slot, op, a, b, 0)) {
+            return cacheResult[slot];
+        }
+        int top = Math.min(level[a], level[b]);
+        int a0 = level[a] == top ? low[a] : a;
+        int a1 = level[a] == top ? high[a] : a;
+        int b0 = level[b] == top ? low[b] : b;
+        int b1 = level[b] == top ? high[b] : b;
+        int result;
+        switch (op) {
+            case OP_AND:
+                result = mk(top, and(a0, b0), and(a1, b1));
+                break;
+            case OP_OR:
+                result = mk(top, or(a0, b0), or(a1, b1));
+                break;
+            default:
+                result = mk(top, xor(a0, b0), xor(a1, b1));
+                break;
+        }
+        return store(slot, op, a, b, 0, result);
+    }
+
+    /**
+     * The conjunction of the variables at {@code levels}, for quantification.
+     */
+    int cube(int[] levels) {
+        int[] sorted = levels.clone();
+        Arrays.sort(sorted);
+        int cube = TRUE;
+        for (int i = sorted.length - 1; i >= 0; i--) {
+            cube = mk(sorted[i], FALSE, cube);
+        }
+        return cube;
+    }
+
+    /**
+     * Existentially quantifies the variables of {@code cube} out of
+     * {@code a}.
+     */
+    int exists(int a, int cube) {
+        while (cube != TRUE && level[cube] < level[a]) {
+            cube = high[cube];
+        }
+        if (a < 2 || cube == TRUE) {
+            return a;
+        }
+        int slot = slot(OP_EXISTS, a, cube, 0);
+        if (hit(slot, OP_EXISTS, a, cube, 0)) {
+            return cacheResult[slot];
+        }
+        int result;
+        if (level[cube] == level[a]) {
+            int lo = exists(low[a], high[cube]);
+            result = lo == TRUE ? TRUE : or(lo, exists(high[a], high[cube]));
+        } else {
+            result = mk(level[a], exists(low[a], cube), exists(high[a], cube));
+        }
+        return store(slot, OP_EXISTS, a, cube, 0, result);
+    }
+
+    /**
+     * {@code exists(and(a, b), cube)}, without building the conjunction.
+     */
+    int relProd(int a, int b, int cube) {
+        if (a == FALSE || b == FALSE) {
+            return FALSE;
+        }
+        if (a == TRUE) {
+            return exists(b, cube);
+        }
+        if (b == TRUE || a == b) {
+            return exists(a, cube);
+        }
+        int top = Math.min(level[a], level[b]);
+        while (cube != TRUE && level[cube] < top) {
+            cube = high[cube];
+        }
+        if (cube == TRUE) {
+            return and(a, b);
+        }
+        if (a > b) {
+            int t = a;
+            a = b;
+            b = t;
+        }
+        int slot = slot(OP_RELPROD, a, b, cube);
+        if (hit(slot, OP_RELPROD, a, b, cube)) {
+            return cacheResult[slot];
+        }
+        int a0 = level[a] == top ? low[a] : a;
+        int a1 = level[a] == top ? high[a] : a;
+        int b0 = level[b] == top ? low[b] : b;
+        int b1 = level[b] == top ? high[b] : b;
+        int result;
+        if (level[cube] == top) {
+            int lo = relProd(a0, b0, high[cube]);
+            result = lo == TRUE ? TRUE : or(lo, relProd(a1, b1, high[cube]));
+        } else {
+            result = mk(top, relProd(a0, b0, cube), relProd(a1, b1, cube));
+        }
+        return store(slot, OP_RELPROD, a, b, cube, result);
+    }
+
+    /**
+     * A substitution of variables for variables, for {@link #replace}.
+     */
+    final class Renaming {
+        private final int id = ++renamings;
+        private final int[] levels;
+
+        private Renaming(int[] levels) {
+            this.levels = levels.clone();
+        }
+    }
+
+    /**
+     * @param levels the new level of each level.
+     */
+    Renaming renaming(int[] levels) {
+        return new Renaming(levels);
+    }
+
+    /**
+     * Renames the variables of {@code a}. Where the renaming keeps a node
+     * above its children the node is rebuilt directly, otherwise it is
+     * rebuilt with {@link #ite}, so any renaming works.
+     */
+    int replace(int a, Renaming renaming) {
+        if (a < 2) {
+            return a;
+        }
+        int slot = slot(OP_REPLACE, a, renaming.id, 0);
+        if (hit(slot, OP_REPLACE, a, renaming.id, 0)) {
+            return cacheResult[slot];
+        }
+        int lo = replace(low[a], renaming);
+        int hi = replace(high[a], renaming);
+        int top = renaming.levels[level[a]];
+        int result = top < level[lo] && top < level[hi] ? mk(top, lo, hi) : ite(vars[top], hi, lo);
+        return store(slot, OP_REPLACE, a, renaming.id, 0, result);
+    }
+
+    /**
+     * @param assignment the value of each level.
+     */
+    boolean evaluate(int a, boolean[] assignment) {
+        while (a >= 2) {
+            a = assignment[level[a]] ? high[a] : low[a];
+        }
+        return a == TRUE;
+    }
+
+    /**
+     * The number of assignments to all {@link #varCount()} variables that
+     * satisfy {@code a}.
+     */
+    double satCount(int a) {
+        return Math.pow(2, level[a]) * satCount(a, new HashMap<>());
+    }
+
+    private double satCount(int a, Map<Integer, Double> memo) {
+        if (a < 2) {
+            return a;
+        }
+        Double known = memo.get(a);
+        if (known != null) {
+            return known;
+        }
+        double count = satCount(low[a], memo) * Math.pow(2, level[low[a]] - level[a] - 1)
+                + satCount(high[a], memo) * Math.pow(2, level[high[a]] - level[a] - 1);
+        memo.put(a, count);
+        return count;
+    }
+
+    int ref(int a) {
+        if (a >= 2) {
+            refs[a]++;
+        }
+        return a;
+    }
+
+    void deref(int a) {
+        if (a >= 2 && refs[a] > 0) {
+            refs[a]--;
+        }
+    }
+
+    /**
+     * The number of nodes in use, including garbage not yet collected.
+     */
+    int liveNodes() {
+        return live;
+    }
+
+    /**
+     * Collects if the table has grown past the threshold, then raises the
+     * threshold to twice what survived. Call only at points where every node
+     * still needed is referenced.
+     */
+    void maybeGc() {
+        if (live >= gcThreshold) {
+            gc();
+            gcThreshold = Math.max(gcThreshold, 2 * live);
+        }
+    }
+
+    /**
+     * Frees every node not reachable from a referenced node, and empties the
+     * operation cache, whose entries may name freed nodes.
+     */
+    void gc() {
+        boolean[] marked = new boolean[level.length];
+        int[] stack = new int[level.length];
+        for (int root = 2; root < level.length; root++) {
+            if (refs[root] == 0 || marked[root]) {
+                continue;
+            }
+            int top = 0;
+            stack[top++] = root;
+            marked[root] = true;
+            while (top > 0) {
+                int n = stack[--top];
+                if (low[n] >= 2 && !marked[low[n]]) {
+                    marked[low[n]] = true;
+                    stack[top++] = low[n];
+                }
+                if (high[n] >= 2 && !marked[high[n]]) {
+                    marked[high[n]] = true;
+                    stack[top++] = high[n];
+                }
+            }
+        }
+        Arrays.fill(buckets, 0);
+        free = 0;
+        live = 0;
+        for (int n = level.length - 1; n >= 2; n--) {
+            if (level[n] >= 0 && marked[n]) {
+                link(n);
+                live++;
+            } else {
+                level[n] = -1;
+                next[n] = free;
+                free = n;
+            }
+        }
+        Arrays.fill(cacheOp, 0);
+    }
+
+    /**
+     * The node testing the variable at {@code lvl}, whose children must only
+     * test variables below it.
+     */
+    int mk(int lvl, int lo, int hi) {
+        if (lo == hi) {
+            return lo;
+        }
+        for (int n = buckets[hash(lvl, lo, hi) & (buckets.length - 1)]; n != 0; n = next[n]) {
+            if (level[n] == lvl && low[n] == lo && high[n] == hi) {
+                return n;
+            }
+        }
+        if (free == 0) {
+            grow();
+        }
+        int n = free;
+        free = next[n];
+        level[n] = lvl;
+        low[n] = lo;
+        high[n] = hi;
+        link(n);
+        live++;
+        return n;
+    }
+
+    private void link(int n) {
+        int bucket = hash(level[n], low[n], high[n]) & (buckets.length - 1);
+        next[n] = buckets[bucket];
+        buckets[bucket] = n;
+    }
+
+    /**
+     * Doubles the node arrays and rehashes the live nodes. Node ids stay the
+     * same, so results held by callers remain valid.
+     */
+    private void grow() {
+        int oldSize = level.length;
+        if (oldSize > Integer.MAX_VALUE / 2) {
+            throw new OutOfMemoryError("BDD node table is full.");
+        }
+        int size = 2 * oldSize;
+        level = Arrays.copyOf(level, size);
+        low = Arrays.copyOf(low, size);
+        high = Arrays.copyOf(high, size);
+        next = Arrays.copyOf(next, size);
+        refs = Arrays.copyOf(refs, size);
+        buckets = new int[size];
+        for (int n = 2; n < oldSize; n++) {
+            if (level[n] >= 0) {
+                link(n);
+            }
+        }
+        for (int n = size - 1; n >= oldSize; n--) {
+            level[n] = -1;
+            next[n] = free;
+            free = n;
+        }
+    }
+
+    private static int hash(int a, int b, int c) {
+        int h = a * 0x9e3779b1 + b * 0x85ebca6b + c * 0xc2b2ae35;
+        return h ^ (h >>> 16);
+    }
+
+    private static int slot(int op, int a, int b, int c) {
+        return (hash(a, b, c) + op * 0x27d4eb2d) & (CACHE_SIZE - 1);
+    }
+
+    private boolean hit(int slot, int op, int a, int b, int c) {
+        return cacheOp[slot] == op && cacheA[slot] == a && cacheB[slot] == b && cacheC[slot] == c;
+    }
+
+    private int store(int slot, int op, int a, int b, int c, int result) {
+        cacheOp[slot] = op;
+        cacheA[slot] = a;
+        cacheB[slot] = b;
+        cacheC[slot] = c;
+        cacheResult[slot] = result;
+        return result;
+    }
+}
@@ -0,0 +1,158 @@
+package il.ac.bgu.cs.fvm.impl;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * An immutable {@code Map<String, Boolean>} over a fixed list of names, packed
+ * one bit per name into {@code long} words. It equals, and hashes like, any
+ * other map with the same entries; its hash code is computed once.
+ */
+final class BitValuation extends AbstractMap<String, Boolean> {
+    private final Layout layout;
+    private final long[] bits;
+    private int hash;
+
+    private BitValuation(Layout layout, long[] bits) {
+        this.layout = layout;
+        this.bits = bits;
+    }
+
+    boolean bit(int i) {
+        return (bits[i >>> 6] & (1L << i)) != 0;
+    }
+
+    @Override
+    public Boolean get(Object key) {
+        Integer i = layout.index.get(key);
+        return i == null ? null : bit(i);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return layout.index.containsKey(key);
+    }
+
+    @Override
+    public int size() {
+        return layout.names.length;
+    }
+
+    @Override
+    public Set<Entry<String, Boolean>> entrySet() {
+        return new AbstractSet<Entry<String, Boolean>>() {
+            @Override
+            public Iterator<Entry<String, Boolean>> iterator() {
+                return new Iterator<Entry<String, Boolean>>() {
+                    private int next;
+
+                    @Override
+                    public boolean hasNext() {
+                        return next < layout.names.length;
+                    }
+
+                    @Override
+                    public Entry<String, Boolean> next() {
+                        if (next >= layout.names.length) {
+                            throw new NoSuchElementException();
+                        }
+                        Entry<String, Boolean> entry = new SimpleImmutableEntry<>(layout.names[next], bit(next));
+                        next++;
+                        return entry;
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return layout.names.length;
+            }
+        };
+    }
+
+    @Override
+    public int hashCode() {
+        int h = hash;
+        if (h == 0) {
+            for (int i = 0; i < layout.names.length; i++) {
+                h += layout.names[i].hashCode() ^ Boolean.hashCode(bit(i));
+            }
+            hash = h;
+        }
+        return h;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o instanceof BitValuation && ((BitValuation) o).layout == layout) {
+            return Arrays.equals(bits, ((BitValuation) o).bits);
+        }
+        return super.equals(o);
+    }
+
+    /**
+     * The names of a family of valuations and their bit positions.
+     */
+    static final class Layout {
+        private final String[] names;
+        private final Map<String, Integer> index = new HashMap<>();
+        private final int words;
+
+        Layout(List<String> names) {
+            this.names = names.toArray(new String[0]);
+            for (int i = 0; i < this.names.length; i++) {
+                index.put(this.names[i], i);
+            }
+            this.words = Math.max(1, (this.names.length + 63) >>> 6);
+        }
+
+        int size() {
+            return names.length;
+        }
+
+        String name(int i) {
+            return names[i];
+        }
+
+        /**
+         * The valuation whose first 64 names take the bits of {@code word}.
+         */
+        BitValuation of(long word) {
+            long[] bits = new long[words];
+            bits[0] = word;
+            return new BitValuation(this, bits);
+        }
+
+        /**
+         * The valuation whose name {@code i} takes bit {@code i} of
+         * {@code bits}, which is copied.
+         */
+        BitValuation of(long[] bits) {
+            return new BitValuation(this, Arrays.copyOf(bits, words));
+        }
+
+        /**
+         * Packs {@code values}; names it does not map to {@code true} are
+         * false.
+         */
+        BitValuation pack(Map<String, Boolean> values) {
+            if (values instanceof BitValuation && ((BitValuation) values).layout == this) {
+                return (BitValuation) values;
+            }
+            long[] bits = new long[words];
+            for (int i = 0; i < names.length; i++) {
+                if (Boolean.TRUE.equals(values.get(names[i]))) {
+                    bits[i >>> 6] |= 1L << i;
+                }
+            }
+            return new BitValuation(this, bits);
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package il.ac.bgu.cs.fvm.impl;
+
+import il.ac.bgu.cs.fvm.verification.VerificationResult;
+
+import java.util.List;
+
+/**
+ * The outcome of a bitstate search. Since visited states are stored as
+ * fingerprint bits only, some reachable states may have been skipped; the
+ * report says how likely that is. A violation it reports is always real,
+ * but the absence of one is only as good as {@link #getCoverage()}.
+ */
+public final class BitstateReport<S> {
+    private final long states;
+    private final long transitions;
+    private final int maxDepth;
+    private final long retainedValues;
+    private final long tableBits;
+    private final int hashes;
+    private final double omissionProbability;
+    private final double expectedOmissions;
+    private final List<S> trace;
+    private final VerificationResult<S> result;
+
+    BitstateReport(long states, long transitions, int maxDepth, long retainedValues, BitstateTable table, List<S> trace, VerificationResult<S> result) {
+        this.states = states;
+        this.transitions = transitions;
+        this.maxDepth = maxDepth;
+        this.retainedValues = retainedValues;
+        this.tableBits = table.sizeInBits();
+        this.hashes = table.hashes();
+        this.omissionProbability = table.omissionProbability();
+        this.expectedOmissions = table.expectedOmissions();
+        this.trace = trace;
+        this.result = result;
+    }
+
+    /**
+     * The number of distinct states the search visited.
+     */
+    public long getStates() {
+        return states;
+    }
+
+    /**
+     * The number of transitions the search generated.
+     */
+    public long getTransitions() {
+        return transitions;
+    }
+
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    /**
+     * The number of values the state space kept on the heap besides the
+     * table, such as the interned variable values and channel contents of a
+     * channel system. Unlike the table, this grows with the state space.
+     */
+    public long getRetainedValues() {
+        return retainedValues;
+    }
+
+    public long getTableBits() {
+        return tableBits;
+    }
+
+    public int getHashes() {
+        return hashes;
+    }
+
+    /**
+     * The chance, with the table as full as it ended up, that a new state is
+     * taken for a visited one and skipped.
+     */
+    public double getOmissionProbability() {
+        return omissionProbability;
+    }
+
+    /**
+     * The expected number of new states the search took for visited ones.
+     * States reachable only through them are missed too, so once the table
+     * fills up this is a lower bound on what was skipped.
+     */
+    public double getExpectedOmissions() {
+        return expectedOmissions;
+    }
+
+    /**
+     * The estimated fraction of the reachable states that were visited,
+     * from {@link #getExpectedOmissions()}. Close to 1 only when the table
+     * is large enough.
+     */
+    public double getCoverage() {
+        return states == 0 ? 1 : states / (states + expectedOmissions);
+    }
+
+    /**
+     * For an invariant check: the path from an initial state to the first
+     * state found to violate the invariant, or {@code null} if none was
+     * found.
+     */
+    public List<S> getTrace() {
+        return trace;
+    }
+
+    /**
+     * For an omega-regular check: the result, as
+     * {@link FvmFacadeImpl#verifyAnOmegaRegularProperty} would report it.
+     * {@code null} for an invariant check.
+     */
+    public VerificationResult<S> getResult() {
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d states, %d transitions, depth %d, %d retained values, %d bits x %d hashes, expected omissions %.3g (coverage %.6f)",
+                states, transitions, maxDepth, retainedValues, tableBits, hashes, expectedOmissions, getCoverage());
+    }
+}
@@ -0,0 +1,291 @@
+package il.ac.bgu.cs.fvm.impl;
+
+import il.ac.bgu.cs.fvm.automata.Automaton;
+import il.ac.bgu.cs.fvm.verification.VerificationFailed;
+import il.ac.bgu.cs.fvm.verification.VerificationResult;
+import il.ac.bgu.cs.fvm.verification.VerificationSucceeded;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Depth-first searches of a {@link StateSpace} that remember visited states
+ * only as bits in a {@link BitstateTable}, at the price of possibly skipping
+ * states whose fingerprint bits were all set by others. Memory is the table,
+ * the search stack and whatever the space itself retains for the states it
+ * generates: nothing for a program graph, but every distinct variable value
+ * and channel content for a channel system, whose states refer to them by
+ * id. {@link BitstateReport#getRetainedValues()} reports the latter.
+ * <p>
+ * {@link #checkInvariant} looks for a reachable state whose labels violate a
+ * predicate. {@link #checkOmegaRegular} is the nested depth-first search of
+ * {@link NestedDfs} over the implicit product with an automaton; the outer
+ * and inner searches share one table, with the inner fingerprints salted so
+ * they do not collide with the outer ones.
+ */
+final class BitstateSearch<S, A, P> {
+    private static final long INNER_SALT = 0x5851f42d4c957f2dL;
+
+    private final StateSpace<S, A, P> space;
+    private final BitstateTable visited;
+    private long states;
+    private long transitions;
+    private int maxDepth;
+
+    BitstateSearch(StateSpace<S, A, P> space, long memoryBytes) {
+        this(space, memoryBytes, BitstateTable.DEFAULT_HASHES);
+    }
+
+    BitstateSearch(StateSpace<S, A, P> space, long memoryBytes, int hashes) {
+        this.space = space;
+        this.visited = new BitstateTable(memoryBytes, hashes);
+    }
+
+    /**
+     * @param output converts the states of a violating trace to their public
+     *               form.
+     */
+    <T> BitstateReport<T> checkInvariant(Predicate<? super Set<P>> invariant, Function<? super S, ? extends T> output) {
+        Deque<Frame<S>> path = new ArrayDeque<>();
+        for (S initial : space.initialStates()) {
+            if (!visit(initial, path)) {
+                continue;
+            }
+            if (!invariant.test(labels(initial))) {
+                return report(trace(path, output), null);
+            }
+            while (!path.isEmpty()) {
+                Frame<S> top = path.peek();
+                if (!top.hasNext()) {
+                    path.pop();
+                    continue;
+                }
+                S next = top.next();
+                if (visit(next, path) && !invariant.test(labels(next))) {
+                    return report(trace(path, output), null);
+                }
+            }
+        }
+        return report(null, null);
+    }
+
+    /**
+     * Checks that no run of the space is accepted by {@code aut}, which
+     * describes the bad behaviors. Counts product states, not states of the
+     * space.
+     */
+    <Q, T> BitstateReport<T> checkOmegaRegular(Automaton<Q, P> aut, Function<? super S, ? extends T> output) {
+        return new Product<>(aut).run(output);
+    }
+
+    private boolean visit(S state, Deque<Frame<S>> path) {
+        if (!visited.add(space.fingerprint(state))) {
+            return false;
+        }
+        states++;
+        path.push(new Frame<>(state, successors(state)));
+        maxDepth = Math.max(maxDepth, path.size());
+        return true;
+    }
+
+    private List<S> successors(S state) {
+        List<S> successors = new ArrayList<>();
+        space.expand(state, (action, next) -> successors.add(next));
+        transitions += successors.size();
+        return successors;
+    }
+
+    private Set<P> labels(S state) {
+        return new HashSet<>(space.labels(state));
+    }
+
+    private <T> BitstateReport<T> report(List<T> trace, VerificationResult<T> result) {
+        return new BitstateReport<>(states, transitions, maxDepth, space.retainedValues(), visited, trace, result);
+    }
+
+    /**
+     * The states on {@code path}, from the bottom of the stack up.
+     */
+    private static <N, T> List<T> trace(Deque<? extends Frame<N>> path, Function<? super N, ? extends T> output) {
+        List<T> trace = new ArrayList<>(path.size());
+        for (Iterator<? extends Frame<N>> frames = path.descendingIterator(); frames.hasNext(); ) {
+            trace.add(output.apply(frames.next().node));
+        }
+        return trace;
+    }
+
+    /**
+     * The nested search over pairs of a state and an automaton state id.
+     */
+    private final class Product<Q> {
+        private final Automaton<Q, P> aut;
+        private final Interner<Q> autStates = new Interner<>();
+        private final BitSet accepting = new BitSet();
+
+        Product(Automaton<Q, P> aut) {
+            this.aut = aut;
+            aut.getInitialStates().forEach(autStates::intern);
+            for (Map.Entry<Q, Map<Set<P>, Set<Q>>> entry : aut.getTransitions().entrySet()) {
+                autStates.intern(entry.getKey());
+                for (Set<Q> targets : entry.getValue().values()) {
+                    targets.forEach(autStates::intern);
+                }
+            }
+            for (Q q : aut.getAcceptingStates()) {
+                accepting.set(autStates.intern(q));
+            }
+        }
+
+        <T> BitstateReport<T> run(Function<? super S, ? extends T> output) {
+            Deque<Frame<Node<S>>> path = new ArrayDeque<>();
+            List<Node<S>> initials = new ArrayList<>();
+            for (S s : space.initialStates()) {
+                for (Q q0 : aut.getInitialStates()) {
+                    addMoves(initials, s, q0);
+                }
+            }
+            for (Node<S> initial : initials) {
+                if (!visitOuter(initial, path)) {
+                    continue;
+                }
+                while (!path.isEmpty()) {
+                    Frame<Node<S>> top = path.peek();
+                    if (top.hasNext()) {
+                        visitOuter(top.next(), path);
+                        continue;
+                    }
+                    path.pop();
+                    if (accepting.get(top.node.q)) {
+                        List<T> cycle = cycleThrough(top.node, output);
+                        if (cycle != null) {
+                            VerificationFailed<T> failure = new VerificationFailed<>();
+                            failure.setPrefix(trace(path, node -> output.apply(node.state)));
+                            failure.setCycle(cycle);
+                            return report(null, failure);
+                        }
+                    }
+                }
+            }
+            return report(null, new VerificationSucceeded<>());
+        }
+
+        private boolean visitOuter(Node<S> node, Deque<Frame<Node<S>>> path) {
+            if (!visited.add(fingerprint(node))) {
+                return false;
+            }
+            states++;
+            path.push(new Frame<>(node, successors(node)));
+            maxDepth = Math.max(maxDepth, path.size());
+            return true;
+        }
+
+        /**
+         * @return the states of a cycle from {@code seed} back to it,
+         * starting at {@code seed} and not repeating it at the end, or
+         * {@code null}.
+         */
+        private <T> List<T> cycleThrough(Node<S> seed, Function<? super S, ? extends T> output) {
+            Deque<Frame<Node<S>>> path = new ArrayDeque<>();
+            visited.add(fingerprint(seed) ^ INNER_SALT);
+            path.push(new Frame<>(seed, successors(seed)));
+            while (!path.isEmpty()) {
+                Frame<Node<S>> top = path.peek();
+                if (!top.hasNext()) {
+                    path.pop();
+                    continue;
+                }
+                Node<S> next = top.next();
+                if (next.equals(seed)) {
+                    return trace(path, node -> output.apply(node.state));
+                }
+                if (visited.add(fingerprint(next) ^ INNER_SALT)) {
+                    path.push(new Frame<>(next, successors(next)));
+                    maxDepth = Math.max(maxDepth, path.size());
+                }
+            }
+            return null;
+        }
+
+        private List<Node<S>> successors(Node<S> node) {
+            Q q = autStates.valueOf(node.q);
+            List<Node<S>> successors = new ArrayList<>();
+            for (S t : BitstateSearch.this.successors(node.state)) {
+                addMoves(successors, t, q);
+            }
+            return successors;
+        }
+
+        /**
+         * Adds the product states {@code (t, p)} with {@code p} in
+         * {@code delta(q, L(t))}.
+         */
+        private void addMoves(List<Node<S>> into, S t, Q q) {
+            Set<Q> targets = aut.nextStates(q, labels(t));
+            if (targets == null) {
+                return;
+            }
+            for (Q p : targets) {
+                into.add(new Node<>(t, autStates.intern(p)));
+            }
+        }
+
+        private long fingerprint(Node<S> node) {
+            return BitstateTable.mix(space.fingerprint(node.state) + (node.q + 1) * 0x9e3779b97f4a7c15L);
+        }
+    }
+
+    private static final class Node<S> {
+        final S state;
+        final int q;
+
+        Node(S state, int q) {
+            this.state = state;
+            this.q = q;
+        }
+
+        @Override
+        public int hashCode() {
+            return state.hashCode() * 31 + q;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Node)) {
+                return false;
+            }
+            Node<?> other = (Node<?>) obj;
+            return q == other.q && state.equals(other.state);
+        }
+    }
+
+    /**
+     * A node on a search stack, with the successors not yet tried.
+     */
+    private static final class Frame<N> {
+        final N node;
+        private final List<N> successors;
+        private int next;
+
+        Frame(N node, List<N> successors) {
+            this.node = node;
+            this.successors = successors;
+        }
+
+        boolean hasNext() {
+            return next < successors.size();
+        }
+
+        N next() {
+            return successors.get(next++);
+        }
+    }
+}
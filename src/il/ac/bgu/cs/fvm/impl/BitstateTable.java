@@ -0,0 +1,98 @@
+package il.ac.bgu.cs.fvm.impl;
+
+/**
+ * A visited set that stores no states, only {@code k} bits per state in a
+ * fixed {@code long[]} (Holzmann's bitstate hashing, a Bloom filter). The
+ * {@code k} bit positions come from one 64-bit fingerprint by double
+ * hashing. A state counts as visited when all of its bits are set, so a new
+ * state may be mistaken for a visited one and be left out of the search,
+ * but the table never grows.
+ * <p>
+ * Before each insertion, the chance that a fresh state would be mistaken for
+ * a visited one is {@code f^k}, where {@code f} is the fraction of bits set.
+ * Summing that chance over the insertions estimates how many states were
+ * missed.
+ */
+final class BitstateTable {
+    static final int DEFAULT_HASHES = 3;
+    /** The largest table a {@code long[]} can index: 2^36 bits, 8 GiB. */
+    private static final int MAX_LOG_BITS = 36;
+
+    private final long[] words;
+    private final long mask;
+    private final int hashes;
+    private long bitsSet;
+    private double expectedOmissions;
+
+    /**
+     * @param memoryBytes the budget; the table uses the largest power of two
+     *                    of bits that fits in it, and at least 64 bits.
+     */
+    BitstateTable(long memoryBytes, int hashes) {
+        if (hashes < 1) {
+            throw new IllegalArgumentException("At least one hash function is needed, got " + hashes);
+        }
+        int logBits = 6;
+        while (logBits < MAX_LOG_BITS && 1L << (logBits + 1) <= memoryBytes * 8) {
+            logBits++;
+        }
+        this.words = new long[(int) (1L << (logBits - 6))];
+        this.mask = (1L << logBits) - 1;
+        this.hashes = hashes;
+    }
+
+    /**
+     * Sets the bits of {@code fingerprint}.
+     *
+     * @return whether any of them was clear, i.e. the state is new.
+     */
+    boolean add(long fingerprint) {
+        double missChance = omissionProbability();
+        long h1 = fingerprint;
+        long h2 = mix(fingerprint) | 1;
+        boolean fresh = false;
+        for (int i = 0; i < hashes; i++) {
+            long bit = (h1 + i * h2) & mask;
+            int word = (int) (bit >>> 6);
+            long b = 1L << bit;
+            if ((words[word] & b) == 0) {
+                words[word] |= b;
+                bitsSet++;
+                fresh = true;
+            }
+        }
+        if (fresh) {
+            expectedOmissions += missChance;
+        }
+        return fresh;
+    }
+
+    /**
+     * The chance that a state not inserted yet would be taken for a visited
+     * one now.
+     */
+    double omissionProbability() {
+        return Math.pow((double) bitsSet / sizeInBits(), hashes);
+    }
+
+    double expectedOmissions() {
+        return expectedOmissions;
+    }
+
+    long sizeInBits() {
+        return mask + 1;
+    }
+
+    int hashes() {
+        return hashes;
+    }
+
+    /**
+     * The splitmix64 finalizer: spreads every input bit over the whole word.
+     */
+    static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,479 @@
+package il.ac.bgu.cs.fvm.impl;
+
+import il.ac.bgu.cs.fvm.channelsystem.ChannelSystem;
+import il.ac.bgu.cs.fvm.channelsystem.InterleavingActDef;
+import il.ac.bgu.cs.fvm.channelsystem.ParserBasedInterleavingActDef;
+import il.ac.bgu.cs.fvm.programgraph.ActionDef;
+import il.ac.bgu.cs.fvm.programgraph.ConditionDef;
+import il.ac.bgu.cs.fvm.programgraph.PGTransition;
+import il.ac.bgu.cs.fvm.programgraph.ParserBasedActDef;
+import il.ac.bgu.cs.fvm.programgraph.ParserBasedCondDef;
+import il.ac.bgu.cs.fvm.programgraph.ProgramGraph;
+import il.ac.bgu.cs.fvm.util.Pair;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The state space of a channel system: reachable pairs of a location vector
+ * (one location per program graph) and a shared evaluation. A process moves
+ * alone on ordinary actions and on asynchronous channel operations. Two
+ * processes move together on matching one-sided actions of a synchronous
+ * channel, whose combined action is {@code "a|b"}.
+ * <p>
+ * States are labelled with each of their locations and with {@code "x = v"}
+ * for every variable.
+ * <p>
+ * During exploration a state is a {@link StateVector}: one slot per process
+ * holding its location id, then one slot per variable or channel holding the
+ * id of its value. A successor copies the vector and updates only the slots
+ * whose location or value changed; values are compared by reference first,
+ * so unchanged channel queues are never hashed again. {@link #unpack} turns
+ * a vector back into the public pair when it enters the result.
+ * <p>
+ * When constructed with a set of observed names, the unfolder applies
+ * partial-order reduction. In a state where some process sits at a location
+ * whose transitions are all local, it expands only that process's enabled
+ * transitions (an ample set). A transition is local when it is not a
+ * handshake, touches no variable or channel that another process writes,
+ * writes nothing that another process touches, and neither writes an
+ * observed variable nor leaves or enters an observed location. Read and
+ * write sets are read off the action and condition text, so they assume the
+ * parser-based syntax. The cycle proviso is static: an ample set that
+ * contains a back edge of its process's control graph is replaced by full
+ * expansion, so every cycle of the reduced system has a fully expanded
+ * state. The reduced system has the same deadlocks, and satisfies the same
+ * stutter-invariant properties over the observed names, as the full one. The
+ * reduction depends only on the state, so sequential and parallel
+ * exploration build the same system.
+ */
+final class ChannelSystemUnfolder<L, A> implements StateSpace<StateVector, A, String> {
+    private static final Pattern IDENTIFIER = Pattern.compile("[A-Za-z_][A-Za-z0-9_]*");
+    /** Assignment targets, channels sent to or received from, and received-into variables. */
+    private static final Pattern WRITE = Pattern.compile("([A-Za-z_][A-Za-z0-9_]*)\\s*(?=:=|[!?])|\\?\\s*([A-Za-z_][A-Za-z0-9_]*)");
+    private final List<ProgramGraph<L, A>> pgs;
+    private final List<Map<L, List<PGTransition<L, A>>>> outgoing = new ArrayList<>();
+    private final Set<ActionDef> actionDefs = Collections.singleton(new ParserBasedActDef());
+    private final Set<ConditionDef> conditionDefs = Collections.singleton(new ParserBasedCondDef());
+    private final InterleavingActDef handshakes = new ParserBasedInterleavingActDef();
+    private final ValuationPool valuations = new ValuationPool();
+    private final List<Interner<L>> locationIds = new ArrayList<>();
+    private final ConcurrentInterner<String> variables = new ConcurrentInterner<>();
+    private final ConcurrentInterner<Object> values = new ConcurrentInterner<>();
+    private final List<Set<L>> localLocations = new ArrayList<>();
+    private final Set<PGTransition<L, A>> backEdges = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    ChannelSystemUnfolder(ChannelSystem<L, A> cs) {
+        this(cs, null);
+    }
+
+    /**
+     * @param observed the variables and locations a property may refer to,
+     *                 or {@code null} to explore the full interleaving.
+     */
+    ChannelSystemUnfolder(ChannelSystem<L, A> cs, Set<String> observed) {
+        pgs = cs.getProgramGraphs();
+        for (ProgramGraph<L, A> pg : pgs) {
+            Map<L, List<PGTransition<L, A>>> byLocation = new HashMap<>();
+            for (PGTransition<L, A> t : pg.getTransitions()) {
+                byLocation.computeIfAbsent(t.getFrom(), k -> new ArrayList<>()).add(t);
+            }
+            outgoing.add(byLocation);
+            Interner<L> ids = new Interner<>();
+            pg.getInitialLocations().forEach(ids::intern);
+            pg.getLocations().forEach(ids::intern);
+            for (PGTransition<L, A> t : pg.getTransitions()) {
+                ids.intern(t.getFrom());
+                ids.intern(t.getTo());
+            }
+            locationIds.add(ids);
+        }
+        if (observed != null) {
+            findLocalLocations(observed);
+            for (int i = 0; i < pgs.size(); i++) {
+                findBackEdges(i);
+            }
+        }
+    }
+
+    @Override
+    public Collection<StateVector> initialStates() {
+        List<List<L>> locations = new ArrayList<>();
+        locations.add(Collections.emptyList());
+        List<Map<String, Object>> evals = new ArrayList<>();
+        evals.add(Collections.emptyMap());
+        for (ProgramGraph<L, A> pg : pgs) {
+            List<List<L>> extendedLocations = new ArrayList<>();
+            for (List<L> prefix : locations) {
+                for (L l : pg.getInitialLocations()) {
+                    List<L> vector = new ArrayList<>(prefix);
+                    vector.add(l);
+                    extendedLocations.add(vector);
+                }
+            }
+            locations = extendedLocations;
+            if (!pg.getInitalizations().isEmpty()) {
+                List<Map<String, Object>> extendedEvals = new ArrayList<>();
+                for (Map<String, Object> eval : evals) {
+                    for (List<String> initialization : pg.getInitalizations()) {
+                        extendedEvals.add(ProgramGraphUnfolder.initialize(eval, initialization, actionDefs));
+                    }
+                }
+                evals = extendedEvals;
+            }
+        }
+        List<StateVector> initials = new ArrayList<>();
+        for (List<L> vector : locations) {
+            for (Map<String, Object> eval : evals) {
+                initials.add(pack(vector, eval));
+            }
+        }
+        return initials;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void expand(StateVector state, BiConsumer<A, StateVector> successors) {
+        Map<String, Object> eval = evaluation(state);
+        for (int i = 0; i < localLocations.size(); i++) {
+            if (localLocations.get(i).contains(location(state, i)) && expandAmple(i, state, eval, successors)) {
+                return;
+            }
+        }
+        for (int i = 0; i < pgs.size(); i++) {
+            for (PGTransition<L, A> t : leaving(i, location(state, i))) {
+                if (handshakes.isOneSidedAction(t.getAction().toString())) {
+                    continue;
+                }
+                StateVector next = step(i, t, state, eval);
+                if (next != null) {
+                    successors.accept(t.getAction(), next);
+                }
+            }
+        }
+        for (int i = 0; i < pgs.size(); i++) {
+            for (PGTransition<L, A> first : leaving(i, location(state, i))) {
+                if (!handshakes.isOneSidedAction(first.getAction().toString()) || !ProgramGraphUnfolder.holds(conditionDefs, eval, first.getCondition())) {
+                    continue;
+                }
+                for (int j = i + 1; j < pgs.size(); j++) {
+                    for (PGTransition<L, A> second : leaving(j, location(state, j))) {
+                        if (!handshakes.isOneSidedAction(second.getAction().toString())) {
+                            continue;
+                        }
+                        String combined = first.getAction() + "|" + second.getAction();
+                        if (!handshakes.isMatchingAction(combined) || !ProgramGraphUnfolder.holds(conditionDefs, eval, second.getCondition())) {
+                            continue;
+                        }
+                        Map<String, Object> effect = handshakes.effect(eval, combined);
+                        if (effect != null) {
+                            successors.accept((A) combined, successor(state, eval, i, first.getTo(), j, second.getTo(), effect));
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public Collection<String> labels(StateVector state) {
+        List<String> labels = new ArrayList<>(state.length());
+        for (int i = 0; i < pgs.size(); i++) {
+            labels.add(location(state, i).toString());
+        }
+        for (int slot = pgs.size(); slot < state.length(); slot++) {
+            if (state.get(slot) != 0) {
+                labels.add(variables.valueOf(slot - pgs.size()) + " = " + values.valueOf(state.get(slot) - 1));
+            }
+        }
+        return labels;
+    }
+
+    @Override
+    public long fingerprint(StateVector state) {
+        return state.fingerprint();
+    }
+
+    /**
+     * Every distinct variable value and channel content seen so far stays in
+     * {@link #values}, since states refer to them by id.
+     */
+    @Override
+    public long retainedValues() {
+        return values.size();
+    }
+
+    /**
+     * The public form of a state: its location vector and its evaluation,
+     * hash-consed so equal evaluations are shared.
+     */
+    Pair<List<L>, Map<String, Object>> unpack(StateVector state) {
+        return new Pair<>(locations(state), valuations.intern(evaluation(state)));
+    }
+
+    /**
+     * Same as {@link #unpack}, without hash-consing the evaluation, so that
+     * decoding states keeps nothing on the heap.
+     */
+    Pair<List<L>, Map<String, Object>> decode(StateVector state) {
+        return new Pair<>(locations(state), new Valuation(evaluation(state)));
+    }
+
+    private List<L> locations(StateVector state) {
+        List<L> locations = new ArrayList<>(pgs.size());
+        for (int i = 0; i < pgs.size(); i++) {
+            locations.add(location(state, i));
+        }
+        return Collections.unmodifiableList(locations);
+    }
+
+    /**
+     * The packed form of a public state, without interning anything.
+     *
+     * @return {@code null} if {@code state} is not a location vector and
+     * evaluation made of locations, variables and values this unfolder has
+     * seen, in which case it cannot be reachable.
+     */
+    StateVector find(Object state) {
+        if (!(state instanceof Pair)) {
+            return null;
+        }
+        Pair<?, ?> pair = (Pair<?, ?>) state;
+        if (!(pair.first instanceof List) || !(pair.second instanceof Map) || ((List<?>) pair.first).size() != pgs.size()) {
+            return null;
+        }
+        List<?> locations = (List<?>) pair.first;
+        int[] slots = new int[pgs.size()];
+        for (int i = 0; i < slots.length; i++) {
+            slots[i] = locationIds.get(i).idOf(locations.get(i));
+            if (slots[i] < 0) {
+                return null;
+            }
+        }
+        Map<?, ?> eval = (Map<?, ?>) pair.second;
+        StateVector.Builder packed = StateVector.of(slots).toBuilder(slots.length + eval.size());
+        for (Map.Entry<?, ?> entry : eval.entrySet()) {
+            int variable = variables.idOf(entry.getKey());
+            int value = values.idOf(entry.getValue());
+            if (variable < 0 || value < 0) {
+                return null;
+            }
+            packed.set(pgs.size() + variable, value + 1);
+        }
+        return packed.build();
+    }
+
+    private StateVector pack(List<L> locations, Map<String, Object> eval) {
+        int[] slots = new int[pgs.size()];
+        for (int i = 0; i < slots.length; i++) {
+            slots[i] = locationIds.get(i).idOf(locations.get(i));
+        }
+        StateVector.Builder packed = StateVector.of(slots).toBuilder(slots.length + eval.size());
+        for (Map.Entry<String, Object> entry : eval.entrySet()) {
+            packed.set(pgs.size() + variables.intern(entry.getKey()), values.intern(entry.getValue()) + 1);
+        }
+        return packed.build();
+    }
+
+    /**
+     * Builds the successor of {@code state}, where process {@code i} moves to
+     * {@code to}, process {@code j} (if not negative) moves to
+     * {@code secondTo}, and the evaluation changes from {@code eval} to
+     * {@code effect}.
+     */
+    private StateVector successor(StateVector state, Map<String, Object> eval, int i, L to, int j, L secondTo, Map<String, Object> effect) {
+        StateVector.Builder next = state.toBuilder(0);
+        next.set(i, locationIds.get(i).idOf(to));
+        if (j >= 0) {
+            next.set(j, locationIds.get(j).idOf(secondTo));
+        }
+        int added = 0;
+        for (Map.Entry<String, Object> entry : effect.entrySet()) {
+            Object old = eval.get(entry.getKey());
+            if (old == null) {
+                added++;
+            }
+            if (old != entry.getValue()) {
+                next.set(pgs.size() + variables.intern(entry.getKey()), values.intern(entry.getValue()) + 1);
+            }
+        }
+        if (eval.size() + added > effect.size()) {
+            for (String name : eval.keySet()) {
+                if (!effect.containsKey(name)) {
+                    next.set(pgs.size() + variables.intern(name), 0);
+                }
+            }
+        }
+        return next.build();
+    }
+
+    private L location(StateVector state, int i) {
+        return locationIds.get(i).valueOf(state.get(i));
+    }
+
+    private Map<String, Object> evaluation(StateVector state) {
+        Map<String, Object> eval = new HashMap<>();
+        for (int slot = pgs.size(); slot < state.length(); slot++) {
+            if (state.get(slot) != 0) {
+                eval.put(variables.valueOf(slot - pgs.size()), values.valueOf(state.get(slot) - 1));
+            }
+        }
+        return Collections.unmodifiableMap(eval);
+    }
+
+    /**
+     * Expands only process {@code i}, whose location is local, unless it has
+     * no enabled transition or one of them closes a cycle.
+     *
+     * @return whether the ample set was used.
+     */
+    private boolean expandAmple(int i, StateVector state, Map<String, Object> eval, BiConsumer<A, StateVector> successors) {
+        List<PGTransition<L, A>> enabled = new ArrayList<>();
+        List<StateVector> targets = new ArrayList<>();
+        for (PGTransition<L, A> t : leaving(i, location(state, i))) {
+            StateVector next = step(i, t, state, eval);
+            if (next != null) {
+                if (backEdges.contains(t)) {
+                    return false;
+                }
+                enabled.add(t);
+                targets.add(next);
+            }
+        }
+        for (int k = 0; k < enabled.size(); k++) {
+            successors.accept(enabled.get(k).getAction(), targets.get(k));
+        }
+        return !enabled.isEmpty();
+    }
+
+    /**
+     * @return the state after process {@code i} takes {@code t} alone, or
+     * {@code null} if {@code t} is not enabled.
+     */
+    private StateVector step(int i, PGTransition<L, A> t, StateVector state, Map<String, Object> eval) {
+        if (!ProgramGraphUnfolder.holds(conditionDefs, eval, t.getCondition())) {
+            return null;
+        }
+        Map<String, Object> effect = ProgramGraphUnfolder.apply(actionDefs, eval, t.getAction());
+        return effect == null ? null : successor(state, eval, i, t.getTo(), -1, null, effect);
+    }
+
+    private void findLocalLocations(Set<String> observed) {
+        List<Set<String>> touched = new ArrayList<>();
+        List<Set<String>> written = new ArrayList<>();
+        for (ProgramGraph<L, A> pg : pgs) {
+            Set<String> processTouched = new HashSet<>();
+            Set<String> processWritten = new HashSet<>();
+            for (PGTransition<L, A> t : pg.getTransitions()) {
+                processTouched.addAll(touches(t));
+                processWritten.addAll(writes(t));
+            }
+            touched.add(processTouched);
+            written.add(processWritten);
+        }
+        for (int i = 0; i < pgs.size(); i++) {
+            Set<String> touchedByOthers = new HashSet<>();
+            Set<String> writtenByOthers = new HashSet<>();
+            for (int j = 0; j < pgs.size(); j++) {
+                if (j != i) {
+                    touchedByOthers.addAll(touched.get(j));
+                    writtenByOthers.addAll(written.get(j));
+                }
+            }
+            Set<L> local = new HashSet<>();
+            for (Map.Entry<L, List<PGTransition<L, A>>> entry : outgoing.get(i).entrySet()) {
+                boolean isLocal = true;
+                for (PGTransition<L, A> t : entry.getValue()) {
+                    Set<String> writes = writes(t);
+                    if (handshakes.isOneSidedAction(t.getAction().toString())
+                            || observed.contains(t.getFrom().toString()) || observed.contains(t.getTo().toString())
+                            || !Collections.disjoint(writes, observed)
+                            || !Collections.disjoint(writes, touchedByOthers)
+                            || !Collections.disjoint(touches(t), writtenByOthers)) {
+                        isLocal = false;
+                        break;
+                    }
+                }
+                if (isLocal) {
+                    local.add(entry.getKey());
+                }
+            }
+            localLocations.add(local);
+        }
+    }
+
+    /**
+     * Marks the back edges of a depth-first search over process {@code i}'s
+     * control graph. Every cycle of the graph contains one.
+     */
+    private void findBackEdges(int i) {
+        Set<L> done = new HashSet<>();
+        Set<L> onPath = new HashSet<>();
+        List<L> roots = new ArrayList<>(pgs.get(i).getInitialLocations());
+        roots.addAll(pgs.get(i).getLocations());
+        for (L root : roots) {
+            if (done.contains(root)) {
+                continue;
+            }
+            Deque<Iterator<PGTransition<L, A>>> path = new ArrayDeque<>();
+            Deque<L> pathLocations = new ArrayDeque<>();
+            onPath.add(root);
+            pathLocations.push(root);
+            path.push(leaving(i, root).iterator());
+            while (!path.isEmpty()) {
+                if (path.peek().hasNext()) {
+                    PGTransition<L, A> t = path.peek().next();
+                    if (onPath.contains(t.getTo())) {
+                        backEdges.add(t);
+                    } else if (!done.contains(t.getTo())) {
+                        onPath.add(t.getTo());
+                        pathLocations.push(t.getTo());
+                        path.push(leaving(i, t.getTo()).iterator());
+                    }
+                } else {
+                    path.pop();
+                    L finished = pathLocations.pop();
+                    onPath.remove(finished);
+                    done.add(finished);
+                }
+            }
+        }
+    }
+
+    private static Set<String> touches(PGTransition<?, ?> t) {
+        Set<String> names = new HashSet<>();
+        for (String text : new String[]{t.getCondition(), t.getAction().toString()}) {
+            Matcher m = IDENTIFIER.matcher(text);
+            while (m.find()) {
+                names.add(m.group());
+            }
+        }
+        return names;
+    }
+
+    private static Set<String> writes(PGTransition<?, ?> t) {
+        Set<String> names = new HashSet<>();
+        Matcher m = WRITE.matcher(t.getAction().toString());
+        while (m.find()) {
+            names.add(m.group(1) != null ? m.group(1) : m.group(2));
+        }
+        return names;
+    }
+
+    private List<PGTransition<L, A>> leaving(int process, L location) {
+        return outgoing.get(process).getOrDefault(location, Collections.emptyList());
+    }
+}
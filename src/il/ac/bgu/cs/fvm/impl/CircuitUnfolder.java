@@ -0,0 +1,137 @@
+package il.ac.bgu.cs.fvm.impl;
+
+import il.ac.bgu.cs.fvm.circuits.Circuit;
+import il.ac.bgu.cs.fvm.exceptions.FVMException;
+import il.ac.bgu.cs.fvm.transitionsystem.Transition;
+import il.ac.bgu.cs.fvm.transitionsystem.TransitionSystem;
+import il.ac.bgu.cs.fvm.util.Pair;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * Builds the transition system of a sequential circuit. A state is a pair of
+ * input and register valuations, the action is the next input, and a state is
+ * labelled with the names of its true inputs, registers and outputs.
+ * <p>
+ * Inputs and registers are packed into {@link BitValuation}s, and every input
+ * valuation is created once and shared by all states. Register valuations are
+ * explored breadth-first from all-false, so only reachable ones are visited.
+ * For each one the circuit is evaluated on all input vectors, in parallel when
+ * asked to; each (input, register) pair is evaluated exactly once.
+ */
+final class CircuitUnfolder {
+    static final int MAX_INPUTS = 30;
+
+    private final Circuit circuit;
+    private final BitValuation.Layout inputs;
+    private final BitValuation.Layout registers;
+    private final BitValuation.Layout outputs;
+    private final BitValuation[] inputVectors;
+
+    CircuitUnfolder(Circuit circuit) {
+        this.circuit = circuit;
+        this.inputs = new BitValuation.Layout(new ArrayList<>(circuit.getInputPortNames()));
+        this.registers = new BitValuation.Layout(new ArrayList<>(circuit.getRegisterNames()));
+        this.outputs = new BitValuation.Layout(new ArrayList<>(circuit.getOutputPortNames()));
+        if (inputs.size() > MAX_INPUTS) {
+            throw new FVMException("Cannot enumerate the inputs of a circuit with " + inputs.size() + " input ports.");
+        }
+        inputVectors = new BitValuation[1 << inputs.size()];
+        for (int x = 0; x < inputVectors.length; x++) {
+            inputVectors[x] = inputs.of(x);
+        }
+    }
+
+    TransitionSystem<Pair<Map<String, Boolean>, Map<String, Boolean>>, Map<String, Boolean>, Object> unfold(boolean parallel) {
+        Map<BitValuation, Step> steps = new LinkedHashMap<>();
+        Deque<BitValuation> worklist = new ArrayDeque<>();
+        BitValuation initial = registers.of(0);
+        steps.put(initial, null);
+        worklist.add(initial);
+        while (!worklist.isEmpty()) {
+            BitValuation r = worklist.poll();
+            Step step = new Step(r, parallel);
+            steps.put(r, step);
+            for (BitValuation next : step.nextRegisters) {
+                if (!steps.containsKey(next)) {
+                    steps.put(next, null);
+                    worklist.add(next);
+                }
+            }
+        }
+
+        TransitionSystemImplementation<Pair<Map<String, Boolean>, Map<String, Boolean>>, Map<String, Boolean>, Object> ts = new TransitionSystemImplementation<>();
+        for (BitValuation x : inputVectors) {
+            ts.addAction(x);
+        }
+        for (BitValuation.Layout layout : new BitValuation.Layout[]{inputs, registers, outputs}) {
+            for (int i = 0; i < layout.size(); i++) {
+                ts.addAtomicProposition(layout.name(i));
+            }
+        }
+        for (Step step : steps.values()) {
+            for (int x = 0; x < inputVectors.length; x++) {
+                Pair<Map<String, Boolean>, Map<String, Boolean>> state = step.states[x];
+                ts.addState(state);
+                label(ts, state, inputs, inputVectors[x]);
+                label(ts, state, registers, step.r);
+                label(ts, state, outputs, step.outputs[x]);
+                if (step.r.equals(initial)) {
+                    ts.setInitial(state, true);
+                }
+            }
+        }
+        for (Step step : steps.values()) {
+            for (int x = 0; x < inputVectors.length; x++) {
+                Step next = steps.get(step.nextRegisters[x]);
+                for (int y = 0; y < inputVectors.length; y++) {
+                    ts.addTransition(new Transition<>(step.states[x], inputVectors[y], next.states[y]));
+                }
+            }
+        }
+        return ts;
+    }
+
+    private static void label(TransitionSystemImplementation<Pair<Map<String, Boolean>, Map<String, Boolean>>, Map<String, Boolean>, Object> ts,
+                              Pair<Map<String, Boolean>, Map<String, Boolean>> state, BitValuation.Layout layout, BitValuation values) {
+        for (int i = 0; i < layout.size(); i++) {
+            if (values.bit(i)) {
+                ts.addToLabel(state, layout.name(i));
+            }
+        }
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static <X, Y> Pair<X, Y>[] pairs(int length) {
+        return new Pair[length];
+    }
+
+    /**
+     * The circuit evaluated on one register valuation and every input vector.
+     */
+    private final class Step {
+        final BitValuation r;
+        final BitValuation[] nextRegisters = new BitValuation[inputVectors.length];
+        final BitValuation[] outputs = new BitValuation[inputVectors.length];
+        final Pair<Map<String, Boolean>, Map<String, Boolean>>[] states;
+
+        Step(BitValuation r, boolean parallel) {
+            this.r = r;
+            this.states = pairs(inputVectors.length);
+            IntStream xs = IntStream.range(0, inputVectors.length);
+            if (parallel) {
+                xs = xs.parallel();
+            }
+            xs.forEach(x -> {
+                nextRegisters[x] = registers.pack(circuit.updateRegisters(inputVectors[x], r));
+                outputs[x] = CircuitUnfolder.this.outputs.pack(circuit.computeOutputs(inputVectors[x], r));
+                states[x] = new Pair<>(inputVectors[x], r);
+            });
+        }
+    }
+}
@@ -0,0 +1,643 @@
+package il.ac.bgu.cs.fvm.impl;
+
+import il.ac.bgu.cs.fvm.exceptions.*;
+import il.ac.bgu.cs.fvm.transitionsystem.Transition;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A memory-lean {@link IndexedTransitionSystem}. States, actions and atomic
+ * propositions are interned to dense int ids, and transitions are kept in
+ * compressed sparse-row form: for state id {@code s}, its outgoing edges are
+ * {@code outActions[outOffsets[s] .. outOffsets[s+1])} and the matching
+ * {@code outTargets}, sorted by (action, target). A mirrored reverse index
+ * serves predecessor queries.
+ * <p>
+ * Added transitions are appended to a pending log and removed ones are
+ * tombstoned; both are merged into the arrays on the next read, so bulk
+ * construction costs one O(|T| log d) rebuild. The {@code Set}s returned by
+ * this class are read-only views over the arrays, valid until the next
+ * mutation.
+ */
+public class CompactTransitionSystem<STATE, ACTION, ATOMIC_PROPOSITION> implements IndexedTransitionSystem<STATE, ACTION, ATOMIC_PROPOSITION> {
+    private String name;
+
+    private final Interner<STATE> stateIds = new Interner<>();
+    private final Interner<ACTION> actionIds = new Interner<>();
+    private final Interner<ATOMIC_PROPOSITION> propIds = new Interner<>();
+    private final BitSet states = new BitSet();
+    private final BitSet initials = new BitSet();
+    private final BitSet actions = new BitSet();
+    private final BitSet atomicProps = new BitSet();
+    private BitSet[] labels = new BitSet[16];
+    private int[] propUse = new int[16];
+    private int[] actionUse = new int[16];
+
+    private int[] outOffsets = {0};
+    private int[] outActions = new int[0];
+    private int[] outTargets = new int[0];
+    private int[] inOffsets = {0};
+    private int[] inActions = new int[0];
+    private int[] inSources = new int[0];
+    private final BitSet removedEdges = new BitSet();
+    private int removedCount;
+
+    private int[] pendingFrom = new int[16];
+    private int[] pendingAction = new int[16];
+    private int[] pendingTo = new int[16];
+    private int pendingCount;
+    private volatile boolean dirty;
+
+    CompactTransitionSystem() {
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    @Override
+    public void addState(STATE state) {
+        int id = stateIds.intern(state);
+        if (id >= labels.length) {
+            labels = Arrays.copyOf(labels, Math.max(id + 1, labels.length * 2));
+        }
+        if (labels[id] == null) {
+            labels[id] = new BitSet();
+        }
+        states.set(id);
+    }
+
+    @Override
+    public void addAction(ACTION anAction) {
+        int id = actionIds.intern(anAction);
+        if (id >= actionUse.length) {
+            actionUse = Arrays.copyOf(actionUse, Math.max(id + 1, actionUse.length * 2));
+        }
+        actions.set(id);
+    }
+
+    @Override
+    public void addAtomicProposition(ATOMIC_PROPOSITION p) {
+        int id = propIds.intern(p);
+        if (id >= propUse.length) {
+            propUse = Arrays.copyOf(propUse, Math.max(id + 1, propUse.length * 2));
+        }
+        atomicProps.set(id);
+    }
+
+    @Override
+    public void setInitial(STATE aState, boolean isInitial) throws StateNotFoundException {
+        int id = stateId(aState);
+        if (id < 0) {
+            throw new StateNotFoundException("State Not Found.");
+        }
+        initials.set(id, isInitial);
+    }
+
+    @Override
+    public void addTransition(Transition<STATE, ACTION> t) throws FVMException {
+        int from = stateId(t.getFrom());
+        int to = stateId(t.getTo());
+        int action = actionId(t.getAction());
+        if (from < 0 || to < 0 || action < 0) {
+            throw new InvalidTransitionException(t);
+        }
+        if (pendingCount == pendingFrom.length) {
+            int capacity = pendingCount * 2;
+            pendingFrom = Arrays.copyOf(pendingFrom, capacity);
+            pendingAction = Arrays.copyOf(pendingAction, capacity);
+            pendingTo = Arrays.copyOf(pendingTo, capacity);
+        }
+        pendingFrom[pendingCount] = from;
+        pendingAction[pendingCount] = action;
+        pendingTo[pendingCount] = to;
+        pendingCount++;
+        dirty = true;
+    }
+
+    @Override
+    public void removeTransition(Transition<STATE, ACTION> t) {
+        mergePending();
+        int edge = edgeIndex(stateIds.idOf(t.getFrom()), actionIds.idOf(t.getAction()), stateIds.idOf(t.getTo()));
+        if (edge >= 0) {
+            removedEdges.set(edge);
+            removedCount++;
+            actionUse[outActions[edge]]--;
+            dirty = true;
+        }
+    }
+
+    @Override
+    public void addToLabel(STATE s, ATOMIC_PROPOSITION l) throws FVMException {
+        int state = stateId(s);
+        if (state < 0) {
+            throw new StateNotFoundException("Cant add label to a state that is not in the set.");
+        }
+        int prop = propId(l);
+        if (prop < 0) {
+            throw new InvalidLablingPairException(s, l);
+        }
+        if (!labels[state].get(prop)) {
+            labels[state].set(prop);
+            propUse[prop]++;
+        }
+    }
+
+    @Override
+    public void removeLabel(STATE s, ATOMIC_PROPOSITION l) {
+        int state = stateId(s);
+        if (state < 0) {
+            throw new StateNotFoundException("Cant remove a label from a state that is not in the set.");
+        }
+        int prop = propId(l);
+        if (prop < 0) {
+            throw new FVMException("Cant remove label that is not in the set.");
+        }
+        if (labels[state].get(prop)) {
+            labels[state].clear(prop);
+            propUse[prop]--;
+        }
+    }
+
+    @Override
+    public Set<ATOMIC_PROPOSITION> getLabel(STATE s) {
+        int state = stateId(s);
+        if (state < 0) {
+            throw new StateNotFoundException("State doesn't exist.");
+        }
+        return new InternedSet<>(propIds, labels[state]);
+    }
+
+    @Override
+    public void removeAction(ACTION action) throws FVMException {
+        int id = actionId(action);
+        if (id < 0) {
+            return;
+        }
+        mergePending();
+        if (actionUse[id] > 0) {
+            throw new DeletionOfAttachedActionException(action, TransitionSystemPart.ACTIONS);
+        }
+        actions.clear(id);
+    }
+
+    @Override
+    public void removeAtomicProposition(ATOMIC_PROPOSITION p) throws FVMException {
+        int id = propId(p);
+        if (id < 0) {
+            return;
+        }
+        if (propUse[id] > 0) {
+            throw new DeletionOfAttachedAtomicPropositionException(p, TransitionSystemPart.ATOMIC_PROPOSITIONS);
+        }
+        atomicProps.clear(id);
+    }
+
+    @Override
+    public void removeState(STATE state) throws FVMException {
+        int id = stateId(state);
+        if (id < 0) {
+            return;
+        }
+        ensureIndexed();
+        if (initials.get(id) || !labels[id].isEmpty() || degree(outOffsets, id) > 0 || degree(inOffsets, id) > 0) {
+            throw new DeletionOfAttachedStateException(state, TransitionSystemPart.STATES);
+        }
+        states.clear(id);
+    }
+
+    @Override
+    public Set<STATE> getStates() {
+        return new InternedSet<>(stateIds, states);
+    }
+
+    @Override
+    public Set<STATE> getInitialStates() {
+        return new InternedSet<>(stateIds, initials);
+    }
+
+    @Override
+    public Set<ACTION> getActions() {
+        return new InternedSet<>(actionIds, actions);
+    }
+
+    @Override
+    public Set<ATOMIC_PROPOSITION> getAtomicPropositions() {
+        return new InternedSet<>(propIds, atomicProps);
+    }
+
+    @Override
+    public Map<STATE, Set<ATOMIC_PROPOSITION>> getLabelingFunction() {
+        return new AbstractMap<STATE, Set<ATOMIC_PROPOSITION>>() {
+            @Override
+            public Set<ATOMIC_PROPOSITION> get(Object key) {
+                int id = stateIds.idOf(key);
+                return id >= 0 && states.get(id) ? new InternedSet<>(propIds, labels[id]) : null;
+            }
+
+            @Override
+            public boolean containsKey(Object key) {
+                int id = stateIds.idOf(key);
+                return id >= 0 && states.get(id);
+            }
+
+            @Override
+            public Set<Entry<STATE, Set<ATOMIC_PROPOSITION>>> entrySet() {
+                return new AbstractSet<Entry<STATE, Set<ATOMIC_PROPOSITION>>>() {
+                    @Override
+                    public int size() {
+                        return states.cardinality();
+                    }
+
+                    @Override
+                    public Iterator<Entry<STATE, Set<ATOMIC_PROPOSITION>>> iterator() {
+                        Iterator<STATE> keys = getStates().iterator();
+                        return new Iterator<Entry<STATE, Set<ATOMIC_PROPOSITION>>>() {
+                            @Override
+                            public boolean hasNext() {
+                                return keys.hasNext();
+                            }
+
+                            @Override
+                            public Entry<STATE, Set<ATOMIC_PROPOSITION>> next() {
+                                STATE s = keys.next();
+                                return new SimpleImmutableEntry<>(s, getLabel(s));
+                            }
+                        };
+                    }
+                };
+            }
+        };
+    }
+
+    @Override
+    public Set<Transition<STATE, ACTION>> getTransitions() {
+        ensureIndexed();
+        final int[] offsets = outOffsets;
+        final int[] edgeActions = outActions;
+        final int[] targets = outTargets;
+        return new AbstractSet<Transition<STATE, ACTION>>() {
+            @Override
+            public int size() {
+                return targets.length;
+            }
+
+            @Override
+            public boolean contains(Object o) {
+                if (!(o instanceof Transition)) {
+                    return false;
+                }
+                Transition<?, ?> t = (Transition<?, ?>) o;
+                return edgeIndex(stateIds.idOf(t.getFrom()), actionIds.idOf(t.getAction()), stateIds.idOf(t.getTo())) >= 0;
+            }
+
+            @Override
+            public Iterator<Transition<STATE, ACTION>> iterator() {
+                return new Iterator<Transition<STATE, ACTION>>() {
+                    private int row = 0;
+                    private int edge = 0;
+
+                    @Override
+                    public boolean hasNext() {
+                        return edge < targets.length;
+                    }
+
+                    @Override
+                    public Transition<STATE, ACTION> next() {
+                        if (edge >= targets.length) {
+                            throw new NoSuchElementException();
+                        }
+                        while (offsets[row + 1] <= edge) {
+                            row++;
+                        }
+                        Transition<STATE, ACTION> t = new Transition<>(stateIds.valueOf(row), actionIds.valueOf(edgeActions[edge]), stateIds.valueOf(targets[edge]));
+                        edge++;
+                        return t;
+                    }
+                };
+            }
+        };
+    }
+
+    @Override
+    public Set<STATE> successors(STATE s) {
+        ensureIndexed();
+        return distinct(outOffsets, outTargets, stateIds.idOf(s));
+    }
+
+    @Override
+    public Set<STATE> successors(STATE s, ACTION a) {
+        ensureIndexed();
+        return slice(outOffsets, outActions, outTargets, stateIds.idOf(s), actionIds.idOf(a));
+    }
+
+    @Override
+    public Set<STATE> predecessors(STATE s) {
+        ensureIndexed();
+        return distinct(inOffsets, inSources, stateIds.idOf(s));
+    }
+
+    @Override
+    public Set<STATE> predecessors(STATE s, ACTION a) {
+        ensureIndexed();
+        return slice(inOffsets, inActions, inSources, stateIds.idOf(s), actionIds.idOf(a));
+    }
+
+    @Override
+    public boolean containsState(STATE s) {
+        int id = stateIds.idOf(s);
+        return id >= 0 && states.get(id);
+    }
+
+    @Override
+    public boolean hasSuccessors(STATE s) {
+        ensureIndexed();
+        int id = stateIds.idOf(s);
+        return id >= 0 && degree(outOffsets, id) > 0;
+    }
+
+    @Override
+    public boolean hasTransition(STATE from, ACTION a, STATE to) {
+        mergePending();
+        return edgeIndex(stateIds.idOf(from), actionIds.idOf(a), stateIds.idOf(to)) >= 0;
+    }
+
+    @Override
+    public Map<ACTION, Set<STATE>> outgoing(STATE s) {
+        ensureIndexed();
+        int id = stateIds.idOf(s);
+        if (id < 0 || degree(outOffsets, id) == 0) {
+            return Collections.emptyMap();
+        }
+        Map<ACTION, Set<STATE>> result = new HashMap<>();
+        int end = outOffsets[id + 1];
+        for (int lo = outOffsets[id]; lo < end; ) {
+            int action = outActions[lo];
+            int hi = lo;
+            while (hi < end && outActions[hi] == action) {
+                hi++;
+            }
+            result.put(actionIds.valueOf(action), new Slice(outTargets, lo, hi));
+            lo = hi;
+        }
+        return result;
+    }
+
+    private int stateId(Object s) {
+        int id = stateIds.idOf(s);
+        return id >= 0 && states.get(id) ? id : -1;
+    }
+
+    private int actionId(Object a) {
+        int id = actionIds.idOf(a);
+        return id >= 0 && actions.get(id) ? id : -1;
+    }
+
+    private int propId(Object p) {
+        int id = propIds.idOf(p);
+        return id >= 0 && atomicProps.get(id) ? id : -1;
+    }
+
+    private static int degree(int[] offsets, int id) {
+        return id + 1 < offsets.length ? offsets[id + 1] - offsets[id] : 0;
+    }
+
+    private Set<STATE> distinct(int[] offsets, int[] ends, int id) {
+        if (id < 0 || degree(offsets, id) == 0) {
+            return Collections.emptySet();
+        }
+        Set<STATE> result = new HashSet<>();
+        for (int i = offsets[id]; i < offsets[id + 1]; i++) {
+            result.add(stateIds.valueOf(ends[i]));
+        }
+        return result;
+    }
+
+    private Set<STATE> slice(int[] offsets, int[] edgeActions, int[] ends, int id, int action) {
+        if (id < 0 || action < 0 || degree(offsets, id) == 0) {
+            return Collections.emptySet();
+        }
+        int lo = offsets[id];
+        int hi = offsets[id + 1];
+        while (lo < hi && edgeActions[lo] < action) {
+            lo++;
+        }
+        int end = lo;
+        while (end < hi && edgeActions[end] == action) {
+            end++;
+        }
+        return lo == end ? Collections.emptySet() : new Slice(ends, lo, end);
+    }
+
+    /**
+     * Index of the live edge {@code from --action--> to} in the forward arrays,
+     * or -1. Pending additions must already be merged.
+     */
+    private int edgeIndex(int from, int action, int to) {
+        if (from < 0 || action < 0 || to < 0 || degree(outOffsets, from) == 0) {
+            return -1;
+        }
+        int lo = outOffsets[from];
+        int hi = outOffsets[from + 1] - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = outActions[mid] != action ? Integer.compare(outActions[mid], action) : Integer.compare(outTargets[mid], to);
+            if (cmp < 0) {
+                lo = mid + 1;
+            } else if (cmp > 0) {
+                hi = mid - 1;
+            } else {
+                return removedEdges.get(mid) ? -1 : mid;
+            }
+        }
+        return -1;
+    }
+
+    private void mergePending() {
+        if (pendingCount > 0) {
+            rebuild();
+        }
+    }
+
+    private void ensureIndexed() {
+        if (dirty) {
+            rebuild();
+        }
+    }
+
+    /**
+     * Merges pending edges into the forward and reverse arrays and drops
+     * tombstoned and duplicate edges.
+     */
+    private synchronized void rebuild() {
+        if (!dirty) {
+            return;
+        }
+        int rows = stateIds.size();
+        int oldRows = outOffsets.length - 1;
+        int total = outTargets.length - removedCount + pendingCount;
+
+        int[] offsets = new int[rows + 1];
+        for (int r = 0; r < oldRows; r++) {
+            offsets[r + 1] += outOffsets[r + 1] - outOffsets[r];
+        }
+        for (int e = removedEdges.nextSetBit(0); e >= 0; e = removedEdges.nextSetBit(e + 1)) {
+            offsets[rowOf(e) + 1]--;
+        }
+        for (int i = 0; i < pendingCount; i++) {
+            offsets[pendingFrom[i] + 1]++;
+        }
+        for (int r = 0; r < rows; r++) {
+            offsets[r + 1] += offsets[r];
+        }
+
+        long[] keys = new long[total];
+        int[] fill = Arrays.copyOf(offsets, rows);
+        for (int r = 0; r < oldRows; r++) {
+            for (int e = outOffsets[r]; e < outOffsets[r + 1]; e++) {
+                if (!removedEdges.get(e)) {
+                    keys[fill[r]++] = pack(outActions[e], outTargets[e]);
+                }
+            }
+        }
+        for (int i = 0; i < pendingCount; i++) {
+            keys[fill[pendingFrom[i]]++] = pack(pendingAction[i], pendingTo[i]);
+        }
+
+        int size = 0;
+        int[] compacted = new int[rows + 1];
+        for (int r = 0; r < rows; r++) {
+            Arrays.sort(keys, offsets[r], offsets[r + 1]);
+            compacted[r] = size;
+            for (int i = offsets[r]; i < offsets[r + 1]; i++) {
+                if (i == offsets[r] || keys[i] != keys[i - 1]) {
+                    keys[size++] = keys[i];
+                }
+            }
+        }
+        compacted[rows] = size;
+
+        int[] newActions = new int[size];
+        int[] newTargets = new int[size];
+        int[] inCounts = new int[rows + 1];
+        Arrays.fill(actionUse, 0);
+        for (int i = 0; i < size; i++) {
+            newActions[i] = (int) (keys[i] >>> 32);
+            newTargets[i] = (int) keys[i];
+            actionUse[newActions[i]]++;
+            inCounts[newTargets[i] + 1]++;
+        }
+
+        for (int r = 0; r < rows; r++) {
+            inCounts[r + 1] += inCounts[r];
+        }
+        long[] inKeys = new long[size];
+        int[] inFill = Arrays.copyOf(inCounts, rows);
+        for (int r = 0; r < rows; r++) {
+            for (int e = compacted[r]; e < compacted[r + 1]; e++) {
+                inKeys[inFill[newTargets[e]]++] = pack(newActions[e], r);
+            }
+        }
+        int[] newInActions = new int[size];
+        int[] newInSources = new int[size];
+        for (int r = 0; r < rows; r++) {
+            Arrays.sort(inKeys, inCounts[r], inCounts[r + 1]);
+        }
+        for (int i = 0; i < size; i++) {
+            newInActions[i] = (int) (inKeys[i] >>> 32);
+            newInSources[i] = (int) inKeys[i];
+        }
+
+        outOffsets = compacted;
+        outActions = newActions;
+        outTargets = newTargets;
+        inOffsets = inCounts;
+        inActions = newInActions;
+        inSources = newInSources;
+        removedEdges.clear();
+        removedCount = 0;
+        pendingCount = 0;
+        dirty = false;
+    }
+
+    private int rowOf(int edge) {
+        int lo = 0;
+        int hi = outOffsets.length - 2;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (outOffsets[mid] <= edge) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return lo;
+    }
+
+    private static long pack(int high, int low) {
+        return ((long) high << 32) | (low & 0xffffffffL);
+    }
+
+    /**
+     * Read-only set over {@code ids[from..to)}, which hold distinct, sorted
+     * state ids.
+     */
+    private final class Slice extends AbstractSet<STATE> {
+        private final int[] ids;
+        private final int from;
+        private final int to;
+
+        Slice(int[] ids, int from, int to) {
+            this.ids = ids;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public int size() {
+            return to - from;
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            int id = stateIds.idOf(o);
+            return id >= 0 && Arrays.binarySearch(ids, from, to, id) >= 0;
+        }
+
+        @Override
+        public Iterator<STATE> iterator() {
+            return new Iterator<STATE>() {
+                private int next = from;
+
+                @Override
+                public boolean hasNext() {
+                    return next < to;
+                }
+
+                @Override
+                public STATE next() {
+                    if (next >= to) {
+                        throw new NoSuchElementException();
+                    }
+                    return stateIds.valueOf(ids[next++]);
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package il.ac.bgu.cs.fvm.impl;
+
+import il.ac.bgu.cs.fvm.exceptions.FVMException;
+import il.ac.bgu.cs.fvm.programgraph.ActionDef;
+import il.ac.bgu.cs.fvm.programgraph.ConditionDef;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The actions and conditions of one unfolding, each resolved once against
+ * the action and condition definitions: an {@link Action} is bound to the
+ * one {@link ActionDef} that matches it, and a {@link Condition} to the
+ * condition definitions it is checked against, with no set to walk when
+ * there is only one.
+ * <p>
+ * Conditions are pure, so a {@link Condition} also remembers its result for
+ * every evaluation it has seen, and a definition interprets a given
+ * condition in a given evaluation only once. Evaluations are hash-consed
+ * {@link Valuation}s, so a memo lookup is a probe on a cached hash code
+ * followed by an identity check. Action results are not memoized, as that
+ * would keep an entry per transition explored; their results are only
+ * interned. This assumes that the definitions are deterministic and free of
+ * side effects. Safe to share between exploration threads.
+ * <p>
+ * Without memoization, condition results and evaluations are not kept, so
+ * memory does not grow with the number of evaluations seen; bitstate
+ * searches use this.
+ */
+final class CompiledDefs {
+    private final Set<ActionDef> actionDefs;
+    private final ConditionDef[] conditionDefs;
+    private final ValuationPool valuations;
+    private final boolean memoize;
+    private final Map<String, Condition> conditions = new ConcurrentHashMap<>();
+    private final Map<Object, Action> actions = new ConcurrentHashMap<>();
+
+    CompiledDefs(Set<ActionDef> actionDefs, Set<ConditionDef> conditionDefs, ValuationPool valuations, boolean memoize) {
+        this.actionDefs = actionDefs;
+        this.conditionDefs = conditionDefs.toArray(new ConditionDef[0]);
+        this.valuations = valuations;
+        this.memoize = memoize;
+    }
+
+    Condition condition(String condition) {
+        return conditions.computeIfAbsent(condition, Condition::new);
+    }
+
+    /**
+     * @throws FVMException if no action definition matches {@code action}.
+     */
+    Action action(Object action) {
+        return actions.computeIfAbsent(action, Action::new);
+    }
+
+    final class Condition {
+        private final String text;
+        private final ConditionDef def;
+        private final Map<Valuation, Boolean> results = new ConcurrentHashMap<>();
+
+        private Condition(String text) {
+            this.text = text;
+            this.def = conditionDefs.length == 1 ? conditionDefs[0] : null;
+        }
+
+        boolean holds(Valuation eval) {
+            if (!memoize) {
+                return evaluate(eval);
+            }
+            Boolean result = results.get(eval);
+            if (result == null) {
+                result = evaluate(eval);
+                results.putIfAbsent(eval, result);
+            }
+            return result;
+        }
+
+        /**
+         * Whether any condition definition accepts the condition.
+         */
+        private boolean evaluate(Valuation eval) {
+            if (def != null) {
+                return def.evaluate(eval, text);
+            }
+            for (ConditionDef candidate : conditionDefs) {
+                if (candidate.evaluate(eval, text)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    final class Action {
+        private final Object action;
+        private final ActionDef def;
+
+        private Action(Object action) {
+            this.action = action;
+            this.def = resolve(action);
+        }
+
+        /**
+         * @return the evaluation after the action, interned when memoizing, or
+         * {@code null} if the action is not enabled in {@code eval}.
+         */
+        Valuation apply(Valuation eval) {
+            Map<String, Object> effect = def.effect(eval, action);
+            if (effect == null) {
+                return null;
+            }
+            return memoize ? valuations.intern(effect) : new Valuation(effect);
+        }
+    }
+
+    private ActionDef resolve(Object action) {
+        for (ActionDef def : actionDefs) {
+            if (def.isMatchingAction(action)) {
+                return def;
+            }
+        }
+        throw new FVMException("No action definition matches " + action);
+    }
+}
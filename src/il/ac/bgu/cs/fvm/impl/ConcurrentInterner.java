@@ -0,0 +1,52 @@
+package il.ac.bgu.cs.fvm.impl;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A thread-safe {@link Interner}. Lookups of known values are lock-free; only
+ * the first sighting of a value takes a lock.
+ */
+final class ConcurrentInterner<T> {
+    private final Map<T, Integer> ids = new ConcurrentHashMap<>();
+    private volatile Object[] values = new Object[16];
+    private int size;
+
+    int intern(T value) {
+        Integer id = ids.get(value);
+        return id != null ? id : add(value);
+    }
+
+    private synchronized int add(T value) {
+        Integer id = ids.get(value);
+        if (id != null) {
+            return id;
+        }
+        Object[] current = values;
+        if (size == current.length) {
+            current = Arrays.copyOf(current, 2 * size);
+        }
+        current[size] = value;
+        values = current;
+        ids.put(value, size);
+        return size++;
+    }
+
+    /**
+     * @return the id of {@code value}, or -1 if it was never interned.
+     */
+    int idOf(Object value) {
+        Integer id = ids.get(value);
+        return id == null ? -1 : id;
+    }
+
+    @SuppressWarnings("unchecked")
+    T valueOf(int id) {
+        return (T) values[id];
+    }
+
+    int size() {
+        return ids.size();
+    }
+}
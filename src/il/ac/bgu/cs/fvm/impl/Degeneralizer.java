@@ -0,0 +1,70 @@
+package il.ac.bgu.cs.fvm.impl;
+
+import il.ac.bgu.cs.fvm.automata.Automaton;
+import il.ac.bgu.cs.fvm.automata.MultiColorAutomaton;
+import il.ac.bgu.cs.fvm.util.Pair;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Turns a GNBA with acceptance sets F_0 .. F_k-1 into an NBA over pairs
+ * {@code (q, i)}. A run stays in copy {@code i} until it leaves a state of
+ * F_i, then moves to copy {@code i+1 mod k}; the accepting states are the
+ * F_0 states of copy 0.
+ * <p>
+ * Pairs are generated breadth-first from {@code (q0, 0)}, so copies a run can
+ * never reach are never materialized. A GNBA without colors accepts every
+ * run, and so does every state of its single copy.
+ */
+final class Degeneralizer {
+
+    private Degeneralizer() {
+    }
+
+    static <S, L> Automaton<Pair<S, Integer>, L> degeneralize(MultiColorAutomaton<S, L> gnba) {
+        List<Set<S>> acceptance = new ArrayList<>();
+        for (int color : new TreeSet<>(gnba.getColors())) {
+            acceptance.add(gnba.getAcceptingStates(color));
+        }
+        int copies = Math.max(1, acceptance.size());
+        Map<S, Map<Set<L>, Set<S>>> transitions = gnba.getTransitions();
+
+        Automaton<Pair<S, Integer>, L> nba = new Automaton<>();
+        Set<Pair<S, Integer>> visited = new HashSet<>();
+        Deque<Pair<S, Integer>> worklist = new ArrayDeque<>();
+        for (S q0 : gnba.getInitialStates()) {
+            Pair<S, Integer> initial = new Pair<>(q0, 0);
+            nba.setInitial(initial);
+            if (visited.add(initial)) {
+                worklist.add(initial);
+            }
+        }
+        while (!worklist.isEmpty()) {
+            Pair<S, Integer> state = worklist.poll();
+            nba.addState(state);
+            boolean leavesCopy = acceptance.isEmpty() || acceptance.get(state.second).contains(state.first);
+            if (state.second == 0 && leavesCopy) {
+                nba.setAccepting(state);
+            }
+            int copy = leavesCopy ? (state.second + 1) % copies : state.second;
+            for (Map.Entry<Set<L>, Set<S>> edge : transitions.getOrDefault(state.first, Collections.emptyMap()).entrySet()) {
+                for (S target : edge.getValue()) {
+                    Pair<S, Integer> next = new Pair<>(target, copy);
+                    nba.addTransition(state, edge.getKey(), next);
+                    if (visited.add(next)) {
+                        worklist.add(next);
+                    }
+                }
+            }
+        }
+        return nba;
+    }
+}
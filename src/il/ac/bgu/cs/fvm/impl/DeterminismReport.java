@@ -0,0 +1,102 @@
+package il.ac.bgu.cs.fvm.impl;
+
+import il.ac.bgu.cs.fvm.transitionsystem.TransitionSystem;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Outcome of a determinism check on a transition system. A system is
+ * deterministic when it has at most one initial state and no state has a
+ * conflict. For action determinism, a conflict is an action leading to more
+ * than one successor. For AP determinism, it is a label shared by more than
+ * one successor. Each check visits every transition once.
+ *
+ * @param <S> states of the checked system
+ * @param <K> what conflicts are keyed by: actions, or labels (sets of propositions)
+ */
+public class DeterminismReport<S, K> {
+    private final Set<S> initialStates;
+    private final Map<S, Set<K>> conflicts;
+
+    private DeterminismReport(Set<S> initialStates, Map<S, Set<K>> conflicts) {
+        this.initialStates = initialStates;
+        this.conflicts = conflicts;
+    }
+
+    public boolean isDeterministic() {
+        return initialStates.size() <= 1 && conflicts.isEmpty();
+    }
+
+    public boolean hasMultipleInitialStates() {
+        return initialStates.size() > 1;
+    }
+
+    /**
+     * @return for every offending state, the actions or labels that have more
+     * than one successor.
+     */
+    public Map<S, Set<K>> getConflicts() {
+        return Collections.unmodifiableMap(conflicts);
+    }
+
+    public Set<S> getOffendingStates() {
+        return Collections.unmodifiableSet(conflicts.keySet());
+    }
+
+    @Override
+    public String toString() {
+        return "DeterminismReport{initialStates=" + initialStates.size() + ", conflicts=" + conflicts + '}';
+    }
+
+    static <S, A> DeterminismReport<S, A> byAction(TransitionSystem<S, A, ?> ts, boolean parallel) {
+        Function<S, Map<A, Set<S>>> outgoing = Reachability.outgoingFunction(ts);
+        Map<S, Set<A>> conflicts = parallel ? new ConcurrentHashMap<>() : new HashMap<>();
+        (parallel ? ts.getStates().parallelStream() : ts.getStates().stream()).forEach(s -> {
+            Set<A> offending = null;
+            for (Map.Entry<A, Set<S>> entry : outgoing.apply(s).entrySet()) {
+                if (entry.getValue().size() > 1) {
+                    if (offending == null) {
+                        offending = new HashSet<>();
+                    }
+                    offending.add(entry.getKey());
+                }
+            }
+            if (offending != null) {
+                conflicts.put(s, offending);
+            }
+        });
+        return new DeterminismReport<>(ts.getInitialStates(), conflicts);
+    }
+
+    static <S, P> DeterminismReport<S, Set<P>> byLabel(TransitionSystem<S, ?, P> ts, boolean parallel) {
+        Function<S, Set<S>> post = Reachability.successorFunction(ts);
+        Map<S, Set<Set<P>>> conflicts = parallel ? new ConcurrentHashMap<>() : new HashMap<>();
+        (parallel ? ts.getStates().parallelStream() : ts.getStates().stream()).forEach(s -> {
+            Set<S> successors = post.apply(s);
+            if (successors.size() <= 1) {
+                return;
+            }
+            Map<Set<P>, S> seen = new HashMap<>();
+            Set<Set<P>> offending = null;
+            for (S next : successors) {
+                Set<P> label = ts.getLabel(next);
+                if (seen.putIfAbsent(label, next) != null) {
+                    if (offending == null) {
+                        offending = new HashSet<>();
+                    }
+                    offending.add(new HashSet<>(label));
+                }
+            }
+            if (offending != null) {
+                conflicts.put(s, offending);
+            }
+        });
+        return new DeterminismReport<>(ts.getInitialStates(), conflicts);
+    }
+}
@@ -0,0 +1,182 @@
+package il.ac.bgu.cs.fvm.impl;
+
+import il.ac.bgu.cs.fvm.exceptions.ActionNotFoundException;
+import il.ac.bgu.cs.fvm.exceptions.StateNotFoundException;
+import il.ac.bgu.cs.fvm.transitionsystem.AlternatingSequence;
+import il.ac.bgu.cs.fvm.transitionsystem.Transition;
+import il.ac.bgu.cs.fvm.transitionsystem.TransitionSystem;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+/**
+ * Checks traces {@code s0, a0, s1, a1, ..., sn} against a single transition
+ * system. The action set is fetched once. Indexed systems answer state
+ * membership and transitions themselves, so a lazy system such as an
+ * {@link InterleavedTransitionSystem} is never built in full; for other
+ * systems the state set is fetched once. On an indexed system, each step of
+ * a trace given as a list or an iterator is a couple of hash lookups with no
+ * allocation. An {@link AlternatingSequence} is walked through its
+ * {@code tail()}, which allocates a sequence per step.
+ * <p>
+ * Results are positions in the alternating sequence: {@link #VALID} if the
+ * whole trace is an execution fragment, otherwise the index of the first
+ * element that cannot follow its prefix. A missing transition
+ * {@code si --ai--> si+1} is reported at the position of {@code si+1}.
+ */
+public class ExecutionValidator<S, A> {
+    public static final int VALID = -1;
+
+    private final TransitionSystem<S, A, ?> ts;
+    private final IndexedTransitionSystem<S, A, ?> indexed;
+    private final Set<S> states;
+    private final Set<A> actions;
+
+    ExecutionValidator(TransitionSystem<S, A, ?> ts) {
+        this.ts = ts;
+        this.indexed = ts instanceof IndexedTransitionSystem ? (IndexedTransitionSystem<S, A, ?>) ts : null;
+        this.states = indexed == null ? ts.getStates() : null;
+        this.actions = ts.getActions();
+    }
+
+    /**
+     * Validates a trace given as alternating elements.
+     *
+     * @param strict when {@code true}, states and actions that are not in the
+     *               system raise {@link StateNotFoundException} and
+     *               {@link ActionNotFoundException}; otherwise they are
+     *               reported as invalid positions.
+     */
+    @SuppressWarnings("unchecked")
+    public int firstInvalid(Iterator<?> elements, boolean strict) {
+        if (!elements.hasNext()) {
+            return VALID;
+        }
+        S from = (S) elements.next();
+        if (!hasState(from)) {
+            return missingState(from, 0, strict);
+        }
+        int position = 1;
+        while (elements.hasNext()) {
+            A action = (A) elements.next();
+            if (!actions.contains(action)) {
+                if (strict) {
+                    throw new ActionNotFoundException(action);
+                }
+                return position;
+            }
+            if (!elements.hasNext()) {
+                return position + 1;
+            }
+            S to = (S) elements.next();
+            if (!hasState(to)) {
+                return missingState(to, position + 1, strict);
+            }
+            if (!hasTransition(from, action, to)) {
+                return position + 1;
+            }
+            from = to;
+            position += 2;
+        }
+        return VALID;
+    }
+
+    /**
+     * Validates the trace {@code states[0], actions[0], states[1], ...}.
+     * {@code states} must hold exactly one element more than {@code actions}.
+     */
+    public int firstInvalid(List<S> states, List<A> actions, boolean strict) {
+        if (states.size() != actions.size() + 1) {
+            throw new IllegalArgumentException("A trace needs one more state than actions, got " + states.size() + " states and " + actions.size() + " actions.");
+        }
+        if (states.isEmpty()) {
+            return VALID;
+        }
+        S from = states.get(0);
+        if (!hasState(from)) {
+            return missingState(from, 0, strict);
+        }
+        for (int i = 0; i < actions.size(); i++) {
+            A action = actions.get(i);
+            S to = states.get(i + 1);
+            if (!this.actions.contains(action)) {
+                if (strict) {
+                    throw new ActionNotFoundException(action);
+                }
+                return 2 * i + 1;
+            }
+            if (!hasState(to)) {
+                return missingState(to, 2 * i + 2, strict);
+            }
+            if (!hasTransition(from, action, to)) {
+                return 2 * i + 2;
+            }
+            from = to;
+        }
+        return VALID;
+    }
+
+    public int firstInvalid(AlternatingSequence<S, A> e, boolean strict) {
+        return firstInvalid(elements(e), strict);
+    }
+
+    /**
+     * Validates many recorded traces, each given as alternating elements.
+     * Unknown states and actions are reported as positions, never thrown.
+     *
+     * @return for each trace, its {@link #firstInvalid} position.
+     */
+    public int[] validateAll(List<? extends Iterable<?>> traces, boolean parallel) {
+        IntStream indexes = IntStream.range(0, traces.size());
+        if (parallel) {
+            indexes = indexes.parallel();
+        }
+        return indexes.map(i -> firstInvalid(traces.get(i).iterator(), false)).toArray();
+    }
+
+    private int missingState(S state, int position, boolean strict) {
+        if (strict) {
+            throw new StateNotFoundException(state);
+        }
+        return position;
+    }
+
+    private boolean hasState(S s) {
+        return indexed != null ? indexed.containsState(s) : states.contains(s);
+    }
+
+    private boolean hasTransition(S from, A action, S to) {
+        if (indexed != null) {
+            return indexed.hasTransition(from, action, to);
+        }
+        return ts.getTransitions().contains(new Transition<>(from, action, to));
+    }
+
+    /**
+     * Walks an {@link AlternatingSequence} element by element, without
+     * copying it into a list; each step takes the sequence's {@code tail()}.
+     */
+    static Iterator<Object> elements(AlternatingSequence<?, ?> e) {
+        return new Iterator<Object>() {
+            private AlternatingSequence<?, ?> rest = e.size() > 0 ? e : null;
+
+            @Override
+            public boolean hasNext() {
+                return rest != null;
+            }
+
+            @Override
+            public Object next() {
+                if (rest == null) {
+                    throw new NoSuchElementException();
+                }
+                Object head = rest.head();
+                rest = rest.size() > 1 ? rest.tail() : null;
+                return head;
+            }
+        };
+    }
+}
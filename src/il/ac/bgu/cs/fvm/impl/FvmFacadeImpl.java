@@ -5,7 +5,6 @@ import il.ac.bgu.cs.fvm.automata.Automaton;
 import il.ac.bgu.cs.fvm.automata.MultiColorAutomaton;
 import il.ac.bgu.cs.fvm.channelsystem.ChannelSystem;
 import il.ac.bgu.cs.fvm.circuits.Circuit;
-import il.ac.bgu.cs.fvm.exceptions.ActionNotFoundException;
 import il.ac.bgu.cs.fvm.exceptions.StateNotFoundException;
 import il.ac.bgu.cs.fvm.ltl.LTL;
 import il.ac.bgu.cs.fvm.programgraph.ActionDef;
@@ -18,10 +17,13 @@ import il.ac.bgu.cs.fvm.util.Pair;
 import il.ac.bgu.cs.fvm.verification.VerificationResult;
 
 import java.io.InputStream;
+import java.nio.file.Path;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Predicate;
 
 /**
  * Implement the methods in this class. You may add additional classes as you
@@ -29,44 +31,45 @@ import java.util.Set;
  * sub-packages.
  */
 public class FvmFacadeImpl implements FvmFacade {
+    private final LtlTranslator ltlTranslator = new LtlTranslator();
+    private final NanoPromelaCompiler nanoPromela = new NanoPromelaCompiler();
 
     @Override
     public <S, A, P> TransitionSystem<S, A, P> createTransitionSystem() {
         return new TransitionSystemImplementation<>();
     }
 
+    /**
+     * Creates a transition system that stores states, actions and propositions
+     * as int ids and transitions as compressed sparse-row arrays. Prefer it
+     * for large systems that are built once and then mostly queried.
+     */
+    public <S, A, P> TransitionSystem<S, A, P> createCompactTransitionSystem() {
+        return new CompactTransitionSystem<>();
+    }
+
     @Override
     public <S, A, P> boolean isActionDeterministic(TransitionSystem<S, A, P> ts) {
-        Set<Transition<S, A>> trans = ts.getTransitions();
-        for (Transition<S, A> t : trans) {
-            for (Transition<S, A> t2 : trans) {
-                if (t.getFrom().equals(t2.getFrom()) && t.getAction().equals(t2.getAction())) {
-                    return false;
-                }
-            }
-        }
-        return true;
+        return analyzeActionDeterminism(ts, false).isDeterministic();
     }
 
     @Override
     public <S, A, P> boolean isAPDeterministic(TransitionSystem<S, A, P> ts) {
-        Set<Transition<S, A>> trans = ts.getTransitions();
-        for (Transition<S, A> t : trans) {
-            for (Transition<S, A> t2 : trans) {
-                if (t.getFrom().equals(t2.getFrom())) {
-                    Set<P> atomic = ts.getLabel(t.getTo());
-                    Set<P> atomic2 = ts.getLabel(t2.getTo());
-                    for (P a : atomic)
-                    {
-                        if(atomic2.contains(a))
-                        {
-                            return false;
-                        }
-                    }
-                }
-            }
-        }
-        return true;
+        return analyzeAPDeterminism(ts, false).isDeterministic();
+    }
+
+    /**
+     * Checks action determinism, reporting the states and actions that break it.
+     */
+    public <S, A, P> DeterminismReport<S, A> analyzeActionDeterminism(TransitionSystem<S, A, P> ts, boolean parallel) {
+        return DeterminismReport.byAction(ts, parallel);
+    }
+
+    /**
+     * Checks AP determinism, reporting the states and successor labels that break it.
+     */
+    public <S, A, P> DeterminismReport<S, Set<P>> analyzeAPDeterminism(TransitionSystem<S, A, P> ts, boolean parallel) {
+        return DeterminismReport.byLabel(ts, parallel);
     }
 
     @Override
@@ -80,32 +83,15 @@ public class FvmFacadeImpl implements FvmFacade {
 
     @Override
     public <S, A, P> boolean isExecutionFragment(TransitionSystem<S, A, P> ts, AlternatingSequence<S, A> e) {
-        AlternatingSequence seq = e;
-        while(seq.size() > 1)
-        {
-            AlternatingSequence tail = seq.tail();
-            Set states = ts.getStates();
-            if(!states.contains(seq.head()))
-            {
-                throw new StateNotFoundException(seq.head());
-            }
-            Set actions = ts.getActions();
-            if(!actions.contains(tail.head()))
-            {
-                throw new ActionNotFoundException(tail.head());
-            }
-            if(!states.contains(tail.tail().head()))
-            {
-                throw new StateNotFoundException(tail.tail().head());
-            }
-            Transition t = new Transition<>(seq.head(),tail.head(),tail.tail().head());
-            if(!ts.getTransitions().contains(t))
-            {
-                return false;
-            }
-            seq = tail.tail();
-        }
-        return true;
+        return executionValidator(ts).firstInvalid(e, true) == ExecutionValidator.VALID;
+    }
+
+    /**
+     * Returns a validator that checks many traces against {@code ts}, reporting
+     * the first invalid position of each.
+     */
+    public <S, A, P> ExecutionValidator<S, A> executionValidator(TransitionSystem<S, A, P> ts) {
+        return new ExecutionValidator<>(ts);
     }
 
     @Override
@@ -124,10 +110,14 @@ public class FvmFacadeImpl implements FvmFacade {
 
     @Override
     public <S, A> boolean isStateTerminal(TransitionSystem<S, A, ?> ts, S s) {
-        if(!ts.getStates().contains(s))
+        if(!containsState(ts, s))
         {
             throw new StateNotFoundException(s);
         }
+        if(ts instanceof IndexedTransitionSystem)
+        {
+            return !((IndexedTransitionSystem<S, A, ?>) ts).hasSuccessors(s);
+        }
         Set<? extends Transition<S, ?>> transitions = ts.getTransitions();
         for(Transition t : transitions)
         {
@@ -141,172 +131,146 @@ public class FvmFacadeImpl implements FvmFacade {
 
     @Override
     public <S> Set<S> post(TransitionSystem<S, ?, ?> ts, S s) {
-        if(!ts.getStates().contains(s))
+        if(!containsState(ts, s))
         {
             throw new StateNotFoundException(s);
         }
-        Set<S> toReturn = new HashSet<>();
-        Set<? extends Transition<S, ?>> transitions = ts.getTransitions();
-        for(Transition<S, ?> t : transitions)
-        {
-            if(t.getFrom().equals(s))
-            {
-                toReturn.add(t.getTo());
-            }
-        }
-        return toReturn;
+        return new HashSet<>(successorsOf(ts, s));
     }
 
     @Override
+    @SuppressWarnings("unchecked")
     public <S> Set<S> post(TransitionSystem<S, ?, ?> ts, Set<S> c) {
+        if(ts instanceof SymbolicCircuitSystem)
+        {
+            return (Set<S>) (Set<?>) ((SymbolicCircuitSystem) ts).post(c);
+        }
         Set<S> toReturn = new HashSet<>();
-        Set<? extends Transition<S, ?>> transitions = ts.getTransitions();
         for(S state : c)
         {
-            if(!ts.getStates().contains(state))
+            if(!containsState(ts, state))
             {
                 throw new StateNotFoundException(state);
             }
-        }
-        for(Transition<S, ?> t : transitions)
-        {
-            if(c.contains(t.getFrom()))
-            {
-                toReturn.add(t.getTo());
-            }
+            toReturn.addAll(successorsOf(ts, state));
         }
         return toReturn;
     }
 
     @Override
     public <S, A> Set<S> post(TransitionSystem<S, A, ?> ts, S s, A a) {
-        if(!ts.getStates().contains(s))
+        if(!containsState(ts, s))
         {
             throw new StateNotFoundException(s);
         }
-        Set<S> toReturn = new HashSet<>();
-        Set<? extends Transition<S, ?>> transitions = ts.getTransitions();
-        for(Transition<S, ?> t : transitions)
-        {
-            if(t.getFrom().equals(s) && t.getAction().equals(a))
-            {
-                toReturn.add(t.getTo());
-            }
-        }
-        return toReturn;
+        return new HashSet<>(successorsOf(ts, s, a));
     }
 
     @Override
+    @SuppressWarnings("unchecked")
     public <S, A> Set<S> post(TransitionSystem<S, A, ?> ts, Set<S> c, A a) {
+        if(ts instanceof SymbolicCircuitSystem)
+        {
+            return (Set<S>) (Set<?>) ((SymbolicCircuitSystem) ts).post(c, (Map<String, Boolean>) a);
+        }
         Set<S> toReturn = new HashSet<>();
-        Set<? extends Transition<S, ?>> transitions = ts.getTransitions();
         for(S state : c)
         {
-            if(!ts.getStates().contains(state))
+            if(!containsState(ts, state))
             {
                 throw new StateNotFoundException(state);
             }
-        }
-        for(Transition<S, ?> t : transitions)
-        {
-            if(c.contains(t.getFrom()) && t.getAction().equals(a))
-            {
-                toReturn.add(t.getTo());
-            }
+            toReturn.addAll(successorsOf(ts, state, a));
         }
         return toReturn;
     }
 
     @Override
     public <S> Set<S> pre(TransitionSystem<S, ?, ?> ts, S s) {
-        if(!ts.getStates().contains(s))
+        if(!containsState(ts, s))
         {
             throw new StateNotFoundException(s);
         }
-        Set<S> toReturn = new HashSet<>();
-        Set<? extends Transition<S, ?>> transitions = ts.getTransitions();
-        for(Transition<S, ?> t : transitions)
-        {
-            if(t.getTo().equals(s))
-            {
-                toReturn.add(t.getFrom());
-            }
-        }
-        return toReturn;
+        return new HashSet<>(predecessorsOf(ts, s));
     }
 
     @Override
+    @SuppressWarnings("unchecked")
     public <S> Set<S> pre(TransitionSystem<S, ?, ?> ts, Set<S> c) {
+        if(ts instanceof SymbolicCircuitSystem)
+        {
+            return (Set<S>) (Set<?>) ((SymbolicCircuitSystem) ts).pre(c);
+        }
         Set<S> toReturn = new HashSet<>();
-        Set<? extends Transition<S, ?>> transitions = ts.getTransitions();
         for(S state : c)
         {
-            if(!ts.getStates().contains(state))
+            if(!containsState(ts, state))
             {
                 throw new StateNotFoundException(state);
             }
-        }
-        for(Transition<S, ?> t : transitions)
-        {
-            if(c.contains(t.getTo()))
-            {
-                toReturn.add(t.getFrom());
-            }
+            toReturn.addAll(predecessorsOf(ts, state));
         }
         return toReturn;
     }
 
     @Override
     public <S, A> Set<S> pre(TransitionSystem<S, A, ?> ts, S s, A a) {
-        if(!ts.getStates().contains(s))
+        if(!containsState(ts, s))
         {
             throw new StateNotFoundException(s);
         }
-        Set<S> toReturn = new HashSet<>();
-        Set<? extends Transition<S, ?>> transitions = ts.getTransitions();
-        for(Transition<S, ?> t : transitions)
-        {
-            if(t.getTo().equals(s) && t.getAction().equals(a))
-            {
-                toReturn.add(t.getFrom());
-            }
-        }
-        return toReturn;
+        return new HashSet<>(predecessorsOf(ts, s, a));
     }
 
     @Override
+    @SuppressWarnings("unchecked")
     public <S, A> Set<S> pre(TransitionSystem<S, A, ?> ts, Set<S> c, A a) {
+        if(ts instanceof SymbolicCircuitSystem)
+        {
+            return (Set<S>) (Set<?>) ((SymbolicCircuitSystem) ts).pre(c, (Map<String, Boolean>) a);
+        }
         Set<S> toReturn = new HashSet<>();
-        Set<? extends Transition<S, ?>> transitions = ts.getTransitions();
         for(S state : c)
         {
-            if(!ts.getStates().contains(state))
+            if(!containsState(ts, state))
             {
                 throw new StateNotFoundException(state);
             }
-        }
-        for(Transition<S, ?> t : transitions)
-        {
-            if(c.contains(t.getTo()) && t.getAction().equals(a))
-            {
-                toReturn.add(t.getFrom());
-            }
+            toReturn.addAll(predecessorsOf(ts, state, a));
         }
         return toReturn;
     }
 
     @Override
     public <S, A> Set<S> reach(TransitionSystem<S, A, ?> ts) {
-        Set<S> toReturn = new HashSet<>();
-        Set<S> states = ts.getStates();
-        for(S state : states)
+        return reach(ts, false);
+    }
+
+    /**
+     * Same as {@link #reach(TransitionSystem)}, optionally expanding each BFS
+     * frontier in parallel. Worth it only for large systems. The states of a
+     * {@link SymbolicCircuitSystem} are found symbolically either way.
+     */
+    @SuppressWarnings("unchecked")
+    public <S, A> Set<S> reach(TransitionSystem<S, A, ?> ts, boolean parallel) {
+        if(ts instanceof SymbolicCircuitSystem)
         {
-            if(hasOrIsInitialFather(ts,state))
-            {
-                toReturn.add(state);
-            }
+            return (Set<S>) (Set<?>) ((SymbolicCircuitSystem) ts).reach();
         }
-        return toReturn;
+        if(parallel)
+        {
+            ImageComputer<S, A> images = imageComputer(ts, true);
+            return new HashSet<>(images.decode(images.reach()));
+        }
+        return Reachability.reach(ts);
+    }
+
+    /**
+     * Returns a bit-set based post/pre engine over a snapshot of {@code ts},
+     * for fixpoint computations that apply images repeatedly.
+     */
+    public <S, A> ImageComputer<S, A> imageComputer(TransitionSystem<S, A, ?> ts, boolean parallel) {
+        return new ImageComputer<>(ts, parallel);
     }
 
     @Override
@@ -316,74 +280,15 @@ public class FvmFacadeImpl implements FvmFacade {
 
     @Override
     public <S1, S2, A, P> TransitionSystem<Pair<S1, S2>, A, P> interleave(TransitionSystem<S1, A, P> ts1, TransitionSystem<S2, A, P> ts2, Set<A> handShakingActions) {
-        TransitionSystem<Pair<S1, S2>, A, P> toReturn = new TransitionSystemImplementation<>();
-        Set<A> firstActions = ts1.getActions();
-        for(A a : firstActions)
-        {
-            toReturn.addAction(a);
-        }
-        Set<A> secondActions = ts2.getActions();
-        for(A a : secondActions)
-        {
-            toReturn.addAction(a);
-        }
-        Set<S1> firstInitialStates = ts1.getInitialStates();
-        Set<S2> secondInitialStates = ts2.getInitialStates();
-        Set<Transition<S1, A>> transitions1 = ts1.getTransitions();
-        Set<Transition<S2, A>> transitions2 = ts2.getTransitions();
-        Set<Pair<S1,S2>> previous = new HashSet<>();
-        for(S1 state1 : firstInitialStates)
-        {
-            for(S2 state2 : secondInitialStates)
-            {
-                Pair<S1,S2> newState = new Pair<>(state1,state2);
-                Set<Transition<Pair<S1,S2>,A>> got = iAmTryingMF(ts1,ts2,newState,previous,handShakingActions);
-                for(Transition<Pair<S1,S2>,A> t : got)
-                {
-                    previous.add(t.getFrom());
-                    previous.add(t.getTo());
-                    if(!toReturn.getStates().contains(t.getFrom()))
-                    {
-                        toReturn.addState(t.getFrom());
-                        if(firstInitialStates.contains(t.getFrom().first) && secondInitialStates.contains(t.getFrom().second))
-                        {
-                            toReturn.setInitial(t.getFrom(),true);
-                        }
-                    }
-                    if(!toReturn.getStates().contains(t.getTo()))
-                    {
-                        toReturn.addState(t.getTo());
-                        if(firstInitialStates.contains(t.getTo().first) && secondInitialStates.contains(t.getTo().second))
-                        {
-                            toReturn.setInitial(t.getTo(),true);
-                        }
-                    }
-                    toReturn.addTransition(t);
-                }
-            }
-        }
-        Set<P> atomics1 = ts1.getAtomicPropositions();
-        for(P p : atomics1)
-        {
-            toReturn.addAtomicProposition(p);
-        }
-        atomics1 = ts2.getAtomicPropositions();
-        for(P p : atomics1)
-        {
-            toReturn.addAtomicProposition(p);
-        }
-        for(Pair<S1,S2> pair : toReturn.getStates())
-        {
-            for(P p : ts1.getLabelingFunction().get(pair.first))
-            {
-                toReturn.addToLabel(pair,p);
-            }
-            for(P p : ts2.getLabelingFunction().get(pair.second))
-            {
-                toReturn.addToLabel(pair,p);
-            }
-        }
-        return toReturn;
+        return new InterleavedTransitionSystem<>(ts1, ts2, handShakingActions).build();
+    }
+
+    /**
+     * Returns the interleaving of {@code ts1} and {@code ts2} as a read-only
+     * view, whose successors are computed on demand from the operands.
+     */
+    public <S1, S2, A, P> TransitionSystem<Pair<S1, S2>, A, P> interleaveLazily(TransitionSystem<S1, A, P> ts1, TransitionSystem<S2, A, P> ts2, Set<A> handShakingActions) {
+        return new InterleavedTransitionSystem<>(ts1, ts2, handShakingActions);
     }
 
     @Override
@@ -393,32 +298,152 @@ public class FvmFacadeImpl implements FvmFacade {
 
     @Override
     public <L1, L2, A> ProgramGraph<Pair<L1, L2>, A> interleave(ProgramGraph<L1, A> pg1, ProgramGraph<L2, A> pg2) {
-        throw new UnsupportedOperationException("Not supported yet."); // TODO: Implement interleave
+        return new InterleavedProgramGraph<>(pg1, pg2);
+    }
+
+    /**
+     * Same as {@link #interleave(ProgramGraph, ProgramGraph)}, but builds every
+     * pair location and transition up front into a mutable program graph.
+     */
+    public <L1, L2, A> ProgramGraph<Pair<L1, L2>, A> interleaveEagerly(ProgramGraph<L1, A> pg1, ProgramGraph<L2, A> pg2) {
+        return new InterleavedProgramGraph<>(pg1, pg2).build();
     }
 
+    /**
+     * A {@link SymbolicCircuit} is encoded into a {@link SymbolicCircuitSystem};
+     * any other circuit is unfolded explicitly.
+     */
     @Override
     public TransitionSystem<Pair<Map<String, Boolean>, Map<String, Boolean>>, Map<String, Boolean>, Object> transitionSystemFromCircuit(Circuit c) {
-        throw new UnsupportedOperationException("Not supported yet."); // TODO: Implement transitionSystemFromCircuit
+        return transitionSystemFromCircuit(c, false);
+    }
+
+    /**
+     * Same as {@link #transitionSystemFromCircuit(Circuit)}; when
+     * {@code parallel} is set, the input vectors of each register valuation
+     * are evaluated in parallel, so the circuit must be thread-safe.
+     */
+    public TransitionSystem<Pair<Map<String, Boolean>, Map<String, Boolean>>, Map<String, Boolean>, Object> transitionSystemFromCircuit(Circuit c, boolean parallel) {
+        if(c instanceof SymbolicCircuit)
+        {
+            return new SymbolicCircuitSystem(c);
+        }
+        return new CircuitUnfolder(c).unfold(parallel);
+    }
+
+    /**
+     * Encodes {@code c} with BDDs even if it is not a {@link SymbolicCircuit},
+     * by evaluating it on every input and register valuation. That limits it
+     * to {@value SymbolicCircuitSystem#MAX_ENUMERATED_BITS} input ports and
+     * registers, but {@code post}, {@code pre} and {@code reach} on the result
+     * are symbolic.
+     */
+    public SymbolicCircuitSystem symbolicTransitionSystemFromCircuit(Circuit c) {
+        return new SymbolicCircuitSystem(c);
     }
 
     @Override
     public <L, A> TransitionSystem<Pair<L, Map<String, Object>>, A, String> transitionSystemFromProgramGraph(ProgramGraph<L, A> pg, Set<ActionDef> actionDefs, Set<ConditionDef> conditionDefs) {
-        throw new UnsupportedOperationException("Not supported yet."); // TODO: Implement transitionSystemFromProgramGraph
+        return StateSpaceExplorer.explore(new ProgramGraphUnfolder<>(pg, actionDefs, conditionDefs), pg.getName());
+    }
+
+    /**
+     * Same as {@link #transitionSystemFromProgramGraph(ProgramGraph, Set, Set)},
+     * exploring on {@code parallelism} threads. The action and condition
+     * definitions must be thread-safe.
+     */
+    public <L, A> TransitionSystem<Pair<L, Map<String, Object>>, A, String> transitionSystemFromProgramGraph(ProgramGraph<L, A> pg, Set<ActionDef> actionDefs, Set<ConditionDef> conditionDefs, int parallelism) {
+        return StateSpaceExplorer.exploreInParallel(new ProgramGraphUnfolder<>(pg, actionDefs, conditionDefs), pg.getName(), parallelism);
     }
 
     @Override
     public <L, A> TransitionSystem<Pair<List<L>, Map<String, Object>>, A, String> transitionSystemFromChannelSystem(ChannelSystem<L, A> cs) {
-        throw new UnsupportedOperationException("Not supported yet."); // TODO: Implement transitionSystemFromChannelSystem
+        ChannelSystemUnfolder<L, A> unfolder = new ChannelSystemUnfolder<>(cs);
+        return StateSpaceExplorer.explore(unfolder, null, unfolder::unpack);
+    }
+
+    /**
+     * Same as {@link #transitionSystemFromChannelSystem(ChannelSystem)},
+     * exploring on {@code parallelism} threads.
+     */
+    public <L, A> TransitionSystem<Pair<List<L>, Map<String, Object>>, A, String> transitionSystemFromChannelSystem(ChannelSystem<L, A> cs, int parallelism) {
+        ChannelSystemUnfolder<L, A> unfolder = new ChannelSystemUnfolder<>(cs);
+        return StateSpaceExplorer.exploreInParallel(unfolder, null, parallelism, unfolder::unpack);
+    }
+
+    /**
+     * Same as {@link #transitionSystemFromChannelSystem(ChannelSystem)}, with
+     * partial-order reduction. The result keeps deadlocks and
+     * stutter-invariant properties over the {@code observed} variables and
+     * locations, but usually has far fewer states.
+     */
+    public <L, A> TransitionSystem<Pair<List<L>, Map<String, Object>>, A, String> transitionSystemFromChannelSystem(ChannelSystem<L, A> cs, Set<String> observed) {
+        ChannelSystemUnfolder<L, A> unfolder = new ChannelSystemUnfolder<>(cs, observed);
+        return StateSpaceExplorer.explore(unfolder, null, unfolder::unpack);
+    }
+
+    /**
+     * Same as {@link #transitionSystemFromChannelSystem(ChannelSystem)}, but
+     * keeps the visited states and the transitions in memory-mapped files in
+     * {@code directory} rather than on the heap. The distinct variable values
+     * and channel contents the states refer to stay interned on the heap.
+     * The result reads those files directly; close it to release them.
+     */
+    public <L, A> MappedTransitionSystem<Pair<List<L>, Map<String, Object>>, A, String> transitionSystemFromChannelSystem(ChannelSystem<L, A> cs, Path directory) {
+        ChannelSystemUnfolder<L, A> unfolder = new ChannelSystemUnfolder<>(cs);
+        return MappedTransitionSystem.explore(unfolder, null, directory, unfolder::decode, unfolder::find);
+    }
+
+    /**
+     * Searches the state space of {@code pg} for a state whose labels violate
+     * {@code invariant}, remembering visited states only as bits in a table of
+     * at most {@code memoryBytes}. Memory stays fixed, but states may be
+     * skipped; the report estimates how many.
+     */
+    public <L, A> BitstateReport<Pair<L, Map<String, Object>>> checkInvariantBitstate(ProgramGraph<L, A> pg, Set<ActionDef> actionDefs, Set<ConditionDef> conditionDefs, Predicate<? super Set<String>> invariant, long memoryBytes) {
+        return new BitstateSearch<>(new ProgramGraphUnfolder<>(pg, actionDefs, conditionDefs, false), memoryBytes).checkInvariant(invariant, Function.identity());
+    }
+
+    /**
+     * Same as {@link #checkInvariantBitstate(ProgramGraph, Set, Set, Predicate, long)},
+     * for a channel system. Memory is not fixed here: every distinct variable
+     * value and channel content reached stays interned, as the report's
+     * {@link BitstateReport#getRetainedValues()} shows.
+     */
+    public <L, A> BitstateReport<Pair<List<L>, Map<String, Object>>> checkInvariantBitstate(ChannelSystem<L, A> cs, Predicate<? super Set<String>> invariant, long memoryBytes) {
+        ChannelSystemUnfolder<L, A> unfolder = new ChannelSystemUnfolder<>(cs);
+        return new BitstateSearch<>(unfolder, memoryBytes).checkInvariant(invariant, unfolder::unpack);
+    }
+
+    /**
+     * Same as {@link #verifyAnOmegaRegularProperty}, run on the state space
+     * of {@code pg} without building it, and remembering visited product
+     * states only as bits in a table of at most {@code memoryBytes}. A
+     * reported counterexample is real; a success holds up to the coverage in
+     * the report.
+     */
+    public <L, A, Saut> BitstateReport<Pair<L, Map<String, Object>>> verifyAnOmegaRegularPropertyBitstate(ProgramGraph<L, A> pg, Set<ActionDef> actionDefs, Set<ConditionDef> conditionDefs, Automaton<Saut, String> aut, long memoryBytes) {
+        return new BitstateSearch<>(new ProgramGraphUnfolder<>(pg, actionDefs, conditionDefs, false), memoryBytes).checkOmegaRegular(aut, Function.identity());
+    }
+
+    /**
+     * Same as {@link #verifyAnOmegaRegularPropertyBitstate(ProgramGraph, Set, Set, Automaton, long)},
+     * for a channel system. As with {@link #checkInvariantBitstate(ChannelSystem, Predicate, long)},
+     * interned values grow with the state space.
+     */
+    public <L, A, Saut> BitstateReport<Pair<List<L>, Map<String, Object>>> verifyAnOmegaRegularPropertyBitstate(ChannelSystem<L, A> cs, Automaton<Saut, String> aut, long memoryBytes) {
+        ChannelSystemUnfolder<L, A> unfolder = new ChannelSystemUnfolder<>(cs);
+        return new BitstateSearch<>(unfolder, memoryBytes).checkOmegaRegular(aut, unfolder::unpack);
     }
 
     @Override
     public <Sts, Saut, A, P> TransitionSystem<Pair<Sts, Saut>, A, Saut> product(TransitionSystem<Sts, A, P> ts, Automaton<Saut, P> aut) {
-        throw new UnsupportedOperationException("Not supported yet."); // TODO: Implement product
+        return new ProductBuilder<>(ts, aut).build();
     }
 
     @Override
     public ProgramGraph<String, String> programGraphFromNanoPromela(String filename) throws Exception {
-        throw new UnsupportedOperationException("Not supported yet."); // TODO: Implement programGraphFromNanoPromela
+        return nanoPromela.fromFile(filename);
     }
 
 
@@ -428,100 +453,101 @@ public class FvmFacadeImpl implements FvmFacade {
     ////////////////////////
     @Override
     public ProgramGraph<String, String> programGraphFromNanoPromelaString(String nanopromela) throws Exception {
-        throw new UnsupportedOperationException("Not supported yet."); // TODO: Implement programGraphFromNanoPromelaString
+        return nanoPromela.fromString(nanopromela);
     }
 
     @Override
     public ProgramGraph<String, String> programGraphFromNanoPromela(InputStream inputStream) throws Exception {
-        throw new UnsupportedOperationException("Not supported yet."); // TODO: Implement programGraphFromNanoPromela
+        return nanoPromela.fromStream(inputStream);
     }
 
     @Override
     public <S, A, P, Saut> VerificationResult<S> verifyAnOmegaRegularProperty(TransitionSystem<S, A, P> ts, Automaton<Saut, P> aut) {
-        throw new UnsupportedOperationException("Not supported yet."); // TODO: Implement verifyAnOmegaRegularProperty
+        return new NestedDfs<>(ts, aut).run();
     }
 
     @Override
     public <L> Automaton<?, L> LTL2NBA(LTL<L> ltl) {
-        throw new UnsupportedOperationException("Not supported yet."); // TODO: Implement LTL2NBA
+        return ltlTranslator.toNba(ltl);
     }
 
     @Override
     public <L> Automaton<?, L> GNBA2NBA(MultiColorAutomaton<?, L> mulAut) {
-        throw new UnsupportedOperationException("Not supported yet."); // TODO: Implement GNBA2NBA
+        return Degeneralizer.degeneralize(mulAut);
     }
 
-    private <S,A> boolean hasOrIsInitialFather(TransitionSystem<S, A, ?> ts, S state)
+    private <S> boolean containsState(TransitionSystem<S, ?, ?> ts, S s)
     {
-        if(ts.getInitialStates().contains(state))
+        if(ts instanceof IndexedTransitionSystem)
         {
-            return true;
+            return ((IndexedTransitionSystem<S, ?, ?>) ts).containsState(s);
         }
-        Set<S> pres = pre(ts, state);
-        if(pres.size() == 0)
+        return ts.getStates().contains(s);
+    }
+
+    private <S> Set<S> successorsOf(TransitionSystem<S, ?, ?> ts, S s)
+    {
+        if(ts instanceof IndexedTransitionSystem)
         {
-            return false;
+            return ((IndexedTransitionSystem<S, ?, ?>) ts).successors(s);
         }
-        for(S state1 : pres)
+        Set<S> toReturn = new HashSet<>();
+        for(Transition<S, ?> t : ts.getTransitions())
         {
-            if(ts.getInitialStates().contains(state1))
+            if(t.getFrom().equals(s))
             {
-                return true;
+                toReturn.add(t.getTo());
             }
-            boolean ans = hasOrIsInitialFather(ts, state1);
-            if(ans)
+        }
+        return toReturn;
+    }
+
+    private <S, A> Set<S> successorsOf(TransitionSystem<S, A, ?> ts, S s, A a)
+    {
+        if(ts instanceof IndexedTransitionSystem)
+        {
+            return ((IndexedTransitionSystem<S, A, ?>) ts).successors(s, a);
+        }
+        Set<S> toReturn = new HashSet<>();
+        for(Transition<S, A> t : ts.getTransitions())
+        {
+            if(t.getFrom().equals(s) && t.getAction().equals(a))
             {
-                return true;
+                toReturn.add(t.getTo());
             }
         }
-        return false;
+        return toReturn;
     }
 
-    private <S1,S2,A> Set<Transition<Pair<S1,S2>,A>>  iAmTryingMF(TransitionSystem<S1, A, ?> ts1, TransitionSystem<S2, A, ?> ts2, Pair<S1,S2> state, Set<Pair<S1,S2>> previous, Set<A> actionsGroup)
+    private <S> Set<S> predecessorsOf(TransitionSystem<S, ?, ?> ts, S s)
     {
-        Set<Transition<S1,A>> firstTransitions = ts1.getTransitions();
-        Set<Transition<S2,A>> secondTransitions = ts2.getTransitions();
-        Set<Transition<Pair<S1,S2>,A>> toReturn = new HashSet<>();
-        if(previous.contains(state))
+        if(ts instanceof IndexedTransitionSystem)
         {
-            return new HashSet<>();
+            return ((IndexedTransitionSystem<S, ?, ?>) ts).predecessors(s);
         }
-        previous.add(state);
-        for(Transition<S1,A> t : firstTransitions)
+        Set<S> toReturn = new HashSet<>();
+        for(Transition<S, ?> t : ts.getTransitions())
         {
-            if(t.getFrom().equals(state.first))
+            if(t.getTo().equals(s))
             {
-                if(actionsGroup.contains(t.getAction()))
-                {
-                    for(Transition<S2,A> t2 : secondTransitions)
-                    {
-                        if(t2.getFrom().equals(state.second)) {
-                            if (t2.getAction().equals(t.getAction())) {
-                                Pair<S1, S2> toAdd = new Pair<>(t.getTo(), t2.getTo());
-                                toReturn.add(new Transition<>(state, t.getAction(), toAdd));
-                                toReturn.addAll(iAmTryingMF(ts1, ts2, toAdd, previous, actionsGroup));
-                            }
-                        }
-                    }
-                }
-                else
-                {
-                    Pair<S1,S2> toAdd = new Pair<>(t.getTo(),state.second);
-                    toReturn.add(new Transition<>(state,t.getAction(),toAdd));
-                    toReturn.addAll(iAmTryingMF(ts1,ts2,toAdd,previous,actionsGroup));
-                }
+                toReturn.add(t.getFrom());
             }
         }
-        for(Transition<S2,A> t : secondTransitions)
+        return toReturn;
+    }
+
+    private <S, A> Set<S> predecessorsOf(TransitionSystem<S, A, ?> ts, S s, A a)
+    {
+        if(ts instanceof IndexedTransitionSystem)
+        {
+            return ((IndexedTransitionSystem<S, A, ?>) ts).predecessors(s, a);
+        }
+        Set<S> toReturn = new HashSet<>();
+        for(Transition<S, A> t : ts.getTransitions())
         {
-            if(t.getFrom().equals(state.second))
+            if(t.getTo().equals(s) && t.getAction().equals(a))
             {
-                if(!actionsGroup.contains(t.getAction()))
-                {
-                    Pair<S1,S2> toAdd = new Pair<>(state.first,t.getTo());
-                    toReturn.add(new Transition<>(state,t.getAction(),toAdd));
-                    toReturn.addAll(iAmTryingMF(ts1,ts2,toAdd,previous,actionsGroup));
-                }
+                toReturn.add(t.getFrom());
             }
         }
         return toReturn;
@@ -0,0 +1,236 @@
+package il.ac.bgu.cs.fvm.impl;
+
+import il.ac.bgu.cs.fvm.transitionsystem.Transition;
+import il.ac.bgu.cs.fvm.transitionsystem.TransitionSystem;
+
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Set-at-a-time {@code post}/{@code pre} over a snapshot of a transition
+ * system. States and actions are interned to int ids, the transition relation
+ * is copied once into forward and backward compressed sparse-row arrays, and
+ * state sets are {@link BitSet}s over the state ids.
+ * <p>
+ * Image methods write into a caller-supplied buffer, so fixpoint loops can
+ * swap a few bit sets instead of allocating a {@code HashSet} per step. The
+ * buffer is cleared first, so it must not be the frontier itself; passing
+ * the same bit set as both throws {@link IllegalArgumentException}. When
+ * parallel mode is on, frontiers larger than {@link #PARALLEL_THRESHOLD}
+ * states are split across the common fork-join pool.
+ * <p>
+ * Later changes to the transition system are not seen by an existing
+ * computer.
+ */
+public class ImageComputer<S, A> {
+    public static final int ANY_ACTION = -1;
+    public static final int NO_ACTION = -2;
+    static final int PARALLEL_THRESHOLD = 1 << 12;
+
+    private final Interner<S> stateIds = new Interner<>();
+    private final Interner<A> actionIds = new Interner<>();
+    private final BitSet initials = new BitSet();
+    private final int[] fwdOffsets;
+    private final int[] fwdActions;
+    private final int[] fwdTargets;
+    private final int[] bwdOffsets;
+    private final int[] bwdActions;
+    private final int[] bwdSources;
+    private final boolean parallel;
+
+    ImageComputer(TransitionSystem<S, A, ?> ts, boolean parallel) {
+        this.parallel = parallel;
+        for (S s : ts.getStates()) {
+            stateIds.intern(s);
+        }
+        for (S s : ts.getInitialStates()) {
+            initials.set(stateIds.intern(s));
+        }
+        int n = stateIds.size();
+        Set<Transition<S, A>> transitions = ts.getTransitions();
+        int m = transitions.size();
+        fwdOffsets = new int[n + 1];
+        bwdOffsets = new int[n + 1];
+        int[] from = new int[m];
+        int[] action = new int[m];
+        int[] to = new int[m];
+        int e = 0;
+        for (Transition<S, A> t : transitions) {
+            from[e] = stateIds.idOf(t.getFrom());
+            action[e] = actionIds.intern(t.getAction());
+            to[e] = stateIds.idOf(t.getTo());
+            fwdOffsets[from[e] + 1]++;
+            bwdOffsets[to[e] + 1]++;
+            e++;
+        }
+        for (int i = 0; i < n; i++) {
+            fwdOffsets[i + 1] += fwdOffsets[i];
+            bwdOffsets[i + 1] += bwdOffsets[i];
+        }
+        fwdActions = new int[m];
+        fwdTargets = new int[m];
+        bwdActions = new int[m];
+        bwdSources = new int[m];
+        int[] fwdFill = new int[n];
+        int[] bwdFill = new int[n];
+        for (int i = 0; i < m; i++) {
+            int f = fwdOffsets[from[i]] + fwdFill[from[i]]++;
+            fwdActions[f] = action[i];
+            fwdTargets[f] = to[i];
+            int b = bwdOffsets[to[i]] + bwdFill[to[i]]++;
+            bwdActions[b] = action[i];
+            bwdSources[b] = from[i];
+        }
+    }
+
+    public int stateCount() {
+        return stateIds.size();
+    }
+
+    /**
+     * @return the id of {@code a}, for the action-filtered images, or
+     * {@link #NO_ACTION} if no transition uses it.
+     */
+    public int actionId(A a) {
+        int id = actionIds.idOf(a);
+        return id >= 0 ? id : NO_ACTION;
+    }
+
+    public BitSet encode(Collection<? extends S> states) {
+        BitSet bits = new BitSet(stateIds.size());
+        for (S s : states) {
+            int id = stateIds.idOf(s);
+            if (id >= 0) {
+                bits.set(id);
+            }
+        }
+        return bits;
+    }
+
+    /**
+     * Read-only view of the states in {@code bits}; it reflects later changes
+     * to the bit set.
+     */
+    public Set<S> decode(BitSet bits) {
+        return Collections.unmodifiableSet(new InternedSet<>(stateIds, bits));
+    }
+
+    public BitSet initialStates() {
+        return (BitSet) initials.clone();
+    }
+
+    public BitSet post(BitSet frontier, BitSet into) {
+        return image(frontier, ANY_ACTION, into, fwdOffsets, fwdActions, fwdTargets);
+    }
+
+    public BitSet post(BitSet frontier, int action, BitSet into) {
+        return image(frontier, action, into, fwdOffsets, fwdActions, fwdTargets);
+    }
+
+    public BitSet pre(BitSet frontier, BitSet into) {
+        return image(frontier, ANY_ACTION, into, bwdOffsets, bwdActions, bwdSources);
+    }
+
+    public BitSet pre(BitSet frontier, int action, BitSet into) {
+        return image(frontier, action, into, bwdOffsets, bwdActions, bwdSources);
+    }
+
+    /**
+     * Least fixpoint of {@code X = I union post(X)}: the reachable states.
+     */
+    public BitSet reach() {
+        return closure(initialStates(), true);
+    }
+
+    /**
+     * Least fixpoint of {@code X = targets union pre(X)}: the states from which
+     * some state in {@code targets} is reachable (CTL {@code EF targets}).
+     */
+    public BitSet backwardReach(BitSet targets) {
+        return closure((BitSet) targets.clone(), false);
+    }
+
+    private BitSet closure(BitSet visited, boolean forward) {
+        BitSet frontier = (BitSet) visited.clone();
+        BitSet next = new BitSet(stateIds.size());
+        while (!frontier.isEmpty()) {
+            if (forward) {
+                post(frontier, next);
+            } else {
+                pre(frontier, next);
+            }
+            next.andNot(visited);
+            visited.or(next);
+            BitSet swap = frontier;
+            frontier = next;
+            next = swap;
+        }
+        return visited;
+    }
+
+    private BitSet image(BitSet frontier, int action, BitSet into, int[] offsets, int[] actions, int[] ends) {
+        if (into == frontier) {
+            throw new IllegalArgumentException("The image buffer must not be the frontier it is computed from.");
+        }
+        into.clear();
+        if (parallel && frontier.cardinality() > PARALLEL_THRESHOLD) {
+            int[] ids = frontier.stream().toArray();
+            into.or(ForkJoinPool.commonPool().invoke(new ImageTask(ids, 0, ids.length, action, offsets, actions, ends)));
+            return into;
+        }
+        for (int s = frontier.nextSetBit(0); s >= 0; s = frontier.nextSetBit(s + 1)) {
+            collect(s, action, offsets, actions, ends, into);
+        }
+        return into;
+    }
+
+    private static void collect(int s, int action, int[] offsets, int[] actions, int[] ends, BitSet into) {
+        for (int e = offsets[s]; e < offsets[s + 1]; e++) {
+            if (action == ANY_ACTION || actions[e] == action) {
+                into.set(ends[e]);
+            }
+        }
+    }
+
+    @SuppressWarnings("serial")
+    private static final class ImageTask extends RecursiveTask<BitSet> {
+        private final int[] ids;
+        private final int from;
+        private final int to;
+        private final int action;
+        private final int[] offsets;
+        private final int[] actions;
+        private final int[] ends;
+
+        ImageTask(int[] ids, int from, int to, int action, int[] offsets, int[] actions, int[] ends) {
+            this.ids = ids;
+            this.from = from;
+            this.to = to;
+            this.action = action;
+            this.offsets = offsets;
+            this.actions = actions;
+            this.ends = ends;
+        }
+
+        @Override
+        protected BitSet compute() {
+            if (to - from <= PARALLEL_THRESHOLD) {
+                BitSet result = new BitSet();
+                for (int i = from; i < to; i++) {
+                    collect(ids[i], action, offsets, actions, ends, result);
+                }
+                return result;
+            }
+            int mid = (from + to) >>> 1;
+            ImageTask left = new ImageTask(ids, from, mid, action, offsets, actions, ends);
+            left.fork();
+            BitSet result = new ImageTask(ids, mid, to, action, offsets, actions, ends).compute();
+            result.or(left.join());
+            return result;
+        }
+    }
+}
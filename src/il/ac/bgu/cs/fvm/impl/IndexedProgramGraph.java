@@ -0,0 +1,20 @@
+package il.ac.bgu.cs.fvm.impl;
+
+import il.ac.bgu.cs.fvm.programgraph.PGTransition;
+import il.ac.bgu.cs.fvm.programgraph.ProgramGraph;
+
+import java.util.Collection;
+
+/**
+ * A program graph that can list the transitions leaving a location without
+ * scanning its whole transition set. Unfolding uses {@link #outgoing} when it
+ * gets such a graph, and indexes {@link #getTransitions()} once otherwise.
+ */
+public interface IndexedProgramGraph<L, A> extends ProgramGraph<L, A> {
+
+    /**
+     * The transitions whose source is {@code location}. The returned
+     * collection must not be modified.
+     */
+    Collection<PGTransition<L, A>> outgoing(L location);
+}
@@ -0,0 +1,43 @@
+package il.ac.bgu.cs.fvm.impl;
+
+import il.ac.bgu.cs.fvm.transitionsystem.TransitionSystem;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A transition system that can answer successor and predecessor queries
+ * without scanning its whole transition set. {@link FvmFacadeImpl} uses these
+ * methods whenever it gets such a system, and falls back to scanning
+ * {@link #getTransitions()} otherwise.
+ */
+public interface IndexedTransitionSystem<STATE, ACTION, ATOMIC_PROPOSITION> extends TransitionSystem<STATE, ACTION, ATOMIC_PROPOSITION> {
+
+    /**
+     * Same as {@code getStates().contains(s)}, without building the state set
+     * when it is implicit.
+     */
+    boolean containsState(STATE s);
+
+    Set<STATE> successors(STATE s);
+
+    Set<STATE> successors(STATE s, ACTION a);
+
+    Set<STATE> predecessors(STATE s);
+
+    Set<STATE> predecessors(STATE s, ACTION a);
+
+    boolean hasSuccessors(STATE s);
+
+    /**
+     * Same as {@code getTransitions().contains(new Transition<>(from, a, to))},
+     * without allocating.
+     */
+    boolean hasTransition(STATE from, ACTION a, STATE to);
+
+    /**
+     * The successors of {@code s}, grouped by the action that leads to them.
+     * The returned map must not be modified.
+     */
+    Map<ACTION, Set<STATE>> outgoing(STATE s);
+}
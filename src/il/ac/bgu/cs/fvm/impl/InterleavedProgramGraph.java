@@ -0,0 +1,180 @@
+package il.ac.bgu.cs.fvm.impl;
+
+import il.ac.bgu.cs.fvm.programgraph.PGTransition;
+import il.ac.bgu.cs.fvm.programgraph.ProgramGraph;
+import il.ac.bgu.cs.fvm.util.Pair;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Read-only, implicit view of the interleaving {@code pg1 ||| pg2}. The
+ * transitions leaving a pair location are derived from the operands when
+ * asked for, so unfolding the view only ever touches reachable locations.
+ * {@link #getLocations()} and {@link #getTransitions()} build the full
+ * product once and cache it.
+ * <p>
+ * Operands that are {@link IndexedProgramGraph}s are read live. Any other
+ * operand has its transitions indexed by source location on the first
+ * {@link #outgoing} call; changes made to it after that are not seen.
+ */
+public class InterleavedProgramGraph<L1, L2, A> implements IndexedProgramGraph<Pair<L1, L2>, A> {
+    private final ProgramGraph<L1, A> pg1;
+    private final ProgramGraph<L2, A> pg2;
+    private volatile Function<L1, Collection<PGTransition<L1, A>>> outgoing1;
+    private volatile Function<L2, Collection<PGTransition<L2, A>>> outgoing2;
+    private String name;
+    private ProgramGraphImplementation<Pair<L1, L2>, A> built;
+
+    InterleavedProgramGraph(ProgramGraph<L1, A> pg1, ProgramGraph<L2, A> pg2) {
+        this.pg1 = pg1;
+        this.pg2 = pg2;
+    }
+
+    /**
+     * Builds every pair location and every interleaved transition into a
+     * fresh, mutable {@link ProgramGraphImplementation}.
+     */
+    ProgramGraphImplementation<Pair<L1, L2>, A> build() {
+        ProgramGraphImplementation<Pair<L1, L2>, A> product = new ProgramGraphImplementation<>();
+        product.setName(name);
+        for (L1 l1 : pg1.getLocations()) {
+            for (L2 l2 : pg2.getLocations()) {
+                Pair<L1, L2> location = new Pair<>(l1, l2);
+                product.addLocation(location);
+                outgoing(location).forEach(product::addTransition);
+            }
+        }
+        for (Pair<L1, L2> initial : getInitialLocations()) {
+            product.addLocation(initial);
+            product.setInitial(initial, true);
+        }
+        getInitalizations().forEach(product::addInitalization);
+        return product;
+    }
+
+    private synchronized ProgramGraphImplementation<Pair<L1, L2>, A> built() {
+        if (built == null) {
+            built = build();
+        }
+        return built;
+    }
+
+    private void index() {
+        if (outgoing2 == null) {
+            synchronized (this) {
+                if (outgoing2 == null) {
+                    outgoing1 = ProgramGraphUnfolder.outgoingFunction(pg1);
+                    outgoing2 = ProgramGraphUnfolder.outgoingFunction(pg2);
+                }
+            }
+        }
+    }
+
+    @Override
+    public Collection<PGTransition<Pair<L1, L2>, A>> outgoing(Pair<L1, L2> location) {
+        index();
+        List<PGTransition<Pair<L1, L2>, A>> result = new ArrayList<>();
+        for (PGTransition<L1, A> t : outgoing1.apply(location.first)) {
+            result.add(new PGTransition<>(location, t.getCondition(), t.getAction(), new Pair<>(t.getTo(), location.second)));
+        }
+        for (PGTransition<L2, A> t : outgoing2.apply(location.second)) {
+            result.add(new PGTransition<>(location, t.getCondition(), t.getAction(), new Pair<>(location.first, t.getTo())));
+        }
+        return result;
+    }
+
+    /**
+     * Each initialization of {@code pg1} followed by each initialization of
+     * {@code pg2}. An operand without initializations contributes none.
+     */
+    @Override
+    public Set<List<String>> getInitalizations() {
+        Set<List<String>> inits1 = pg1.getInitalizations();
+        Set<List<String>> inits2 = pg2.getInitalizations();
+        if (inits1.isEmpty() || inits2.isEmpty()) {
+            Set<List<String>> inits = new HashSet<>(inits1);
+            inits.addAll(inits2);
+            return inits;
+        }
+        Set<List<String>> inits = new HashSet<>();
+        for (List<String> init1 : inits1) {
+            for (List<String> init2 : inits2) {
+                List<String> init = new ArrayList<>(init1);
+                init.addAll(init2);
+                inits.add(init);
+            }
+        }
+        return inits;
+    }
+
+    @Override
+    public Set<Pair<L1, L2>> getInitialLocations() {
+        Set<Pair<L1, L2>> initials = new HashSet<>();
+        for (L1 l1 : pg1.getInitialLocations()) {
+            for (L2 l2 : pg2.getInitialLocations()) {
+                initials.add(new Pair<>(l1, l2));
+            }
+        }
+        return initials;
+    }
+
+    @Override
+    public Set<Pair<L1, L2>> getLocations() {
+        return Collections.unmodifiableSet(built().getLocations());
+    }
+
+    @Override
+    public Set<PGTransition<Pair<L1, L2>, A>> getTransitions() {
+        return Collections.unmodifiableSet(built().getTransitions());
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    @Override
+    public void addInitalization(List<String> init) {
+        throw readOnly();
+    }
+
+    @Override
+    public void setInitial(Pair<L1, L2> location, boolean isInitial) {
+        throw readOnly();
+    }
+
+    @Override
+    public void addLocation(Pair<L1, L2> l) {
+        throw readOnly();
+    }
+
+    @Override
+    public void addTransition(PGTransition<Pair<L1, L2>, A> t) {
+        throw readOnly();
+    }
+
+    @Override
+    public void removeLocation(Pair<L1, L2> l) {
+        throw readOnly();
+    }
+
+    @Override
+    public void removeTransition(PGTransition<Pair<L1, L2>, A> t) {
+        throw readOnly();
+    }
+
+    private UnsupportedOperationException readOnly() {
+        return new UnsupportedOperationException("An interleaved view is read-only; use FvmFacadeImpl.interleaveEagerly for a mutable copy.");
+    }
+}
@@ -0,0 +1,316 @@
+package il.ac.bgu.cs.fvm.impl;
+
+import il.ac.bgu.cs.fvm.exceptions.StateNotFoundException;
+import il.ac.bgu.cs.fvm.transitionsystem.Transition;
+import il.ac.bgu.cs.fvm.transitionsystem.TransitionSystem;
+import il.ac.bgu.cs.fvm.util.Pair;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Read-only, implicit view of the interleaving {@code ts1 ||| ts2} (or
+ * {@code ts1 ||_H ts2} with handshaking actions). Successors and labels of a
+ * pair state are derived from the operands when asked for. Membership tests
+ * ({@link #containsState}, {@link #getLabel}) grow a cached search of the
+ * reachable product only until the state is found, so they stay cheap for
+ * states near the initial ones. Queries that need the whole state space
+ * ({@link #getStates()}, {@link #getTransitions()}, predecessors) explore the
+ * reachable product once and cache it. Both caches are safe to grow from
+ * several threads.
+ */
+public class InterleavedTransitionSystem<S1, S2, A, P> implements IndexedTransitionSystem<Pair<S1, S2>, A, P> {
+    private final TransitionSystem<S1, A, P> ts1;
+    private final TransitionSystem<S2, A, P> ts2;
+    private final Set<A> handShakingActions;
+    private final Function<S1, Map<A, Set<S1>>> outgoing1;
+    private final Function<S2, Map<A, Set<S2>>> outgoing2;
+    private String name;
+    private TransitionSystemImplementation<Pair<S1, S2>, A, P> explored;
+    private Set<Pair<S1, S2>> reached;
+    private Deque<Pair<S1, S2>> frontier;
+
+    InterleavedTransitionSystem(TransitionSystem<S1, A, P> ts1, TransitionSystem<S2, A, P> ts2, Set<A> handShakingActions) {
+        this.ts1 = ts1;
+        this.ts2 = ts2;
+        this.handShakingActions = handShakingActions;
+        outgoing1 = Reachability.outgoingFunction(ts1);
+        outgoing2 = Reachability.outgoingFunction(ts2);
+    }
+
+    /**
+     * Builds the reachable part of the product into a fresh, mutable
+     * {@link TransitionSystemImplementation}, in a single worklist pass.
+     */
+    TransitionSystemImplementation<Pair<S1, S2>, A, P> build() {
+        TransitionSystemImplementation<Pair<S1, S2>, A, P> product = new TransitionSystemImplementation<>();
+        product.setName(name);
+        for (A a : getActions()) {
+            product.addAction(a);
+        }
+        for (P p : getAtomicPropositions()) {
+            product.addAtomicProposition(p);
+        }
+        Deque<Pair<S1, S2>> worklist = new ArrayDeque<>();
+        for (Pair<S1, S2> initial : getInitialStates()) {
+            discover(product, initial, worklist);
+            product.setInitial(initial, true);
+        }
+        while (!worklist.isEmpty()) {
+            Pair<S1, S2> state = worklist.pop();
+            for (Map.Entry<A, Set<Pair<S1, S2>>> entry : outgoing(state).entrySet()) {
+                for (Pair<S1, S2> next : entry.getValue()) {
+                    discover(product, next, worklist);
+                    product.addTransition(new Transition<>(state, entry.getKey(), next));
+                }
+            }
+        }
+        return product;
+    }
+
+    private void discover(TransitionSystemImplementation<Pair<S1, S2>, A, P> product, Pair<S1, S2> state, Deque<Pair<S1, S2>> worklist) {
+        if (product.getStates().contains(state)) {
+            return;
+        }
+        product.addState(state);
+        for (P p : label(state)) {
+            product.addToLabel(state, p);
+        }
+        worklist.push(state);
+    }
+
+    private synchronized TransitionSystemImplementation<Pair<S1, S2>, A, P> explored() {
+        if (explored == null) {
+            explored = build();
+            reached = null;
+            frontier = null;
+        }
+        return explored;
+    }
+
+    /**
+     * Searches the product breadth-first from where the last call stopped,
+     * until {@code s} is found or the product is exhausted.
+     */
+    @Override
+    public synchronized boolean containsState(Pair<S1, S2> s) {
+        if (explored != null) {
+            return explored.getStates().contains(s);
+        }
+        if (reached == null) {
+            reached = new HashSet<>(getInitialStates());
+            frontier = new ArrayDeque<>(reached);
+        }
+        if (reached.contains(s)) {
+            return true;
+        }
+        boolean found = false;
+        while (!found && !frontier.isEmpty()) {
+            for (Set<Pair<S1, S2>> targets : outgoing(frontier.poll()).values()) {
+                for (Pair<S1, S2> next : targets) {
+                    if (reached.add(next)) {
+                        frontier.add(next);
+                        found |= next.equals(s);
+                    }
+                }
+            }
+        }
+        return found;
+    }
+
+    @Override
+    public Map<A, Set<Pair<S1, S2>>> outgoing(Pair<S1, S2> state) {
+        Map<A, Set<Pair<S1, S2>>> result = new HashMap<>();
+        Map<A, Set<S2>> second = outgoing2.apply(state.second);
+        for (Map.Entry<A, Set<S1>> entry : outgoing1.apply(state.first).entrySet()) {
+            A a = entry.getKey();
+            if (handShakingActions.contains(a)) {
+                Set<S2> partners = second.get(a);
+                if (partners == null) {
+                    continue;
+                }
+                for (S1 s1 : entry.getValue()) {
+                    for (S2 s2 : partners) {
+                        result.computeIfAbsent(a, k -> new HashSet<>()).add(new Pair<>(s1, s2));
+                    }
+                }
+            } else {
+                for (S1 s1 : entry.getValue()) {
+                    result.computeIfAbsent(a, k -> new HashSet<>()).add(new Pair<>(s1, state.second));
+                }
+            }
+        }
+        for (Map.Entry<A, Set<S2>> entry : second.entrySet()) {
+            A a = entry.getKey();
+            if (!handShakingActions.contains(a)) {
+                for (S2 s2 : entry.getValue()) {
+                    result.computeIfAbsent(a, k -> new HashSet<>()).add(new Pair<>(state.first, s2));
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public Set<Pair<S1, S2>> successors(Pair<S1, S2> s) {
+        Set<Pair<S1, S2>> result = new HashSet<>();
+        for (Set<Pair<S1, S2>> targets : outgoing(s).values()) {
+            result.addAll(targets);
+        }
+        return result;
+    }
+
+    @Override
+    public Set<Pair<S1, S2>> successors(Pair<S1, S2> s, A a) {
+        return outgoing(s).getOrDefault(a, Collections.emptySet());
+    }
+
+    @Override
+    public Set<Pair<S1, S2>> predecessors(Pair<S1, S2> s) {
+        return explored().predecessors(s);
+    }
+
+    @Override
+    public Set<Pair<S1, S2>> predecessors(Pair<S1, S2> s, A a) {
+        return explored().predecessors(s, a);
+    }
+
+    @Override
+    public boolean hasSuccessors(Pair<S1, S2> s) {
+        return !outgoing(s).isEmpty();
+    }
+
+    @Override
+    public boolean hasTransition(Pair<S1, S2> from, A a, Pair<S1, S2> to) {
+        return successors(from, a).contains(to);
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    @Override
+    public Set<A> getActions() {
+        Set<A> actions = new HashSet<>(ts1.getActions());
+        actions.addAll(ts2.getActions());
+        return actions;
+    }
+
+    @Override
+    public Set<P> getAtomicPropositions() {
+        Set<P> atomics = new HashSet<>(ts1.getAtomicPropositions());
+        atomics.addAll(ts2.getAtomicPropositions());
+        return atomics;
+    }
+
+    @Override
+    public Set<P> getLabel(Pair<S1, S2> s) {
+        if (!containsState(s)) {
+            throw new StateNotFoundException(s);
+        }
+        return label(s);
+    }
+
+    private Set<P> label(Pair<S1, S2> s) {
+        Set<P> label = new HashSet<>(ts1.getLabel(s.first));
+        label.addAll(ts2.getLabel(s.second));
+        return label;
+    }
+
+    @Override
+    public Set<Pair<S1, S2>> getInitialStates() {
+        Set<Pair<S1, S2>> initials = new HashSet<>();
+        for (S1 s1 : ts1.getInitialStates()) {
+            for (S2 s2 : ts2.getInitialStates()) {
+                initials.add(new Pair<>(s1, s2));
+            }
+        }
+        return initials;
+    }
+
+    @Override
+    public Set<Pair<S1, S2>> getStates() {
+        return Collections.unmodifiableSet(explored().getStates());
+    }
+
+    @Override
+    public Set<Transition<Pair<S1, S2>, A>> getTransitions() {
+        return Collections.unmodifiableSet(explored().getTransitions());
+    }
+
+    @Override
+    public Map<Pair<S1, S2>, Set<P>> getLabelingFunction() {
+        return Collections.unmodifiableMap(explored().getLabelingFunction());
+    }
+
+    @Override
+    public void addAction(A anAction) {
+        throw readOnly();
+    }
+
+    @Override
+    public void setInitial(Pair<S1, S2> aState, boolean isInitial) {
+        throw readOnly();
+    }
+
+    @Override
+    public void addState(Pair<S1, S2> state) {
+        throw readOnly();
+    }
+
+    @Override
+    public void addTransition(Transition<Pair<S1, S2>, A> t) {
+        throw readOnly();
+    }
+
+    @Override
+    public void addAtomicProposition(P p) {
+        throw readOnly();
+    }
+
+    @Override
+    public void addToLabel(Pair<S1, S2> s, P l) {
+        throw readOnly();
+    }
+
+    @Override
+    public void removeAction(A action) {
+        throw readOnly();
+    }
+
+    @Override
+    public void removeAtomicProposition(P p) {
+        throw readOnly();
+    }
+
+    @Override
+    public void removeLabel(Pair<S1, S2> s, P l) {
+        throw readOnly();
+    }
+
+    @Override
+    public void removeState(Pair<S1, S2> state) {
+        throw readOnly();
+    }
+
+    @Override
+    public void removeTransition(Transition<Pair<S1, S2>, A> t) {
+        throw readOnly();
+    }
+
+    private UnsupportedOperationException readOnly() {
+        return new UnsupportedOperationException("An interleaved view is read-only; use FvmFacadeImpl.interleave for a mutable copy.");
+    }
+}
@@ -0,0 +1,58 @@
+package il.ac.bgu.cs.fvm.impl;
+
+import java.util.AbstractSet;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Read-only {@link java.util.Set} view of the objects whose interned ids are
+ * set in a {@link BitSet}. Changes to the bit set show through the view.
+ */
+final class InternedSet<T> extends AbstractSet<T> {
+    private final Interner<T> interner;
+    private final BitSet ids;
+
+    InternedSet(Interner<T> interner, BitSet ids) {
+        this.interner = interner;
+        this.ids = ids;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        int id = interner.idOf(o);
+        return id >= 0 && ids.get(id);
+    }
+
+    @Override
+    public int size() {
+        return ids.cardinality();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return ids.isEmpty();
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        return new Iterator<T>() {
+            private int next = ids.nextSetBit(0);
+
+            @Override
+            public boolean hasNext() {
+                return next >= 0;
+            }
+
+            @Override
+            public T next() {
+                if (next < 0) {
+                    throw new NoSuchElementException();
+                }
+                T value = interner.valueOf(next);
+                next = ids.nextSetBit(next + 1);
+                return value;
+            }
+        };
+    }
+}
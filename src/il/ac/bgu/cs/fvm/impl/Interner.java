@@ -0,0 +1,66 @@
+package il.ac.bgu.cs.fvm.impl;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Maps objects to dense, stable int ids (0, 1, 2, ...). Ids are never reused
+ * unless their value is {@link #remove}d, so arrays indexed by id stay valid
+ * as the interner grows.
+ */
+final class Interner<T> {
+    private final Map<T, Integer> ids = new HashMap<>();
+    private final List<T> values = new ArrayList<>();
+    private final Deque<Integer> free = new ArrayDeque<>();
+
+    int intern(T value) {
+        Integer id = ids.get(value);
+        if (id == null) {
+            if (free.isEmpty()) {
+                id = values.size();
+                values.add(value);
+            } else {
+                id = free.pop();
+                values.set(id, value);
+            }
+            ids.put(value, id);
+        }
+        return id;
+    }
+
+    /**
+     * Forgets {@code value}, so that a later {@link #intern} may give its id
+     * to another value. Callers must first clear whatever they keep under
+     * that id.
+     */
+    void remove(Object value) {
+        Integer id = ids.remove(value);
+        if (id != null) {
+            values.set(id, null);
+            free.push(id);
+        }
+    }
+
+    /**
+     * @return the id of {@code value}, or -1 if it was never interned.
+     */
+    int idOf(Object value) {
+        Integer id = ids.get(value);
+        return id == null ? -1 : id;
+    }
+
+    T valueOf(int id) {
+        return values.get(id);
+    }
+
+    /**
+     * One more than the largest id handed out.
+     */
+    int size() {
+        return values.size();
+    }
+}
@@ -0,0 +1,393 @@
+package il.ac.bgu.cs.fvm.impl;
+
+import il.ac.bgu.cs.fvm.automata.Automaton;
+import il.ac.bgu.cs.fvm.exceptions.FVMException;
+import il.ac.bgu.cs.fvm.ltl.AP;
+import il.ac.bgu.cs.fvm.ltl.And;
+import il.ac.bgu.cs.fvm.ltl.LTL;
+import il.ac.bgu.cs.fvm.ltl.Next;
+import il.ac.bgu.cs.fvm.ltl.Not;
+import il.ac.bgu.cs.fvm.ltl.TRUE;
+import il.ac.bgu.cs.fvm.ltl.Until;
+import il.ac.bgu.cs.fvm.util.Pair;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Translates LTL formulas to NBAs via elementary sets (Baier and Katoen,
+ * section 5.2).
+ * <p>
+ * Formulas are hash-consed into int node ids: structurally equal subformulas
+ * get the same id no matter which {@link LTL} objects spell them, double
+ * negations cancel, and conjunctions are flattened and sorted. An elementary
+ * set is a {@code long} over the positive subformulas of the closure, so the
+ * consistency rules and the transition constraints are bit operations. The
+ * GNBA is degeneralized on the fly, and only reachable (set, color) pairs
+ * become states.
+ * <p>
+ * Translations are memoized by root node, and each call gets a fresh copy of
+ * the cached automaton, so callers may modify it. The node table and the
+ * cache live as long as the translator.
+ */
+final class LtlTranslator {
+    private static final int TRUE_NODE = 0;
+    private static final int AP_NODE = 1;
+    private static final int NOT_NODE = 2;
+    private static final int AND_NODE = 3;
+    private static final int NEXT_NODE = 4;
+    private static final int UNTIL_NODE = 5;
+    static final int MAX_CLOSURE = 63;
+
+    private final Interner<List<Object>> nodes = new Interner<>();
+    private final List<int[]> children = new ArrayList<>();
+    private final List<LTL<?>> formulas = new ArrayList<>();
+    private final Map<Integer, Compiled> cache = new HashMap<>();
+
+    @SuppressWarnings("unchecked")
+    synchronized <L> Automaton<Pair<Set<LTL<L>>, Integer>, L> toNba(LTL<L> ltl) {
+        int root = intern(ltl, new IdentityHashMap<>());
+        Compiled compiled = cache.computeIfAbsent(root, this::compile);
+        Automaton<Pair<Set<LTL<L>>, Integer>, L> nba = new Automaton<>();
+        for (Object state : compiled.states) {
+            nba.addState((Pair<Set<LTL<L>>, Integer>) state);
+        }
+        for (int i = 0; i < compiled.from.length; i++) {
+            nba.addTransition((Pair<Set<LTL<L>>, Integer>) compiled.states.get(compiled.from[i]),
+                    (Set<L>) compiled.labels.get(i), (Pair<Set<LTL<L>>, Integer>) compiled.states.get(compiled.to[i]));
+        }
+        for (int i : compiled.initial) {
+            nba.setInitial((Pair<Set<LTL<L>>, Integer>) compiled.states.get(i));
+        }
+        for (int i = compiled.accepting.nextSetBit(0); i >= 0; i = compiled.accepting.nextSetBit(i + 1)) {
+            nba.setAccepting((Pair<Set<LTL<L>>, Integer>) compiled.states.get(i));
+        }
+        return nba;
+    }
+
+    private int intern(LTL<?> f, Map<LTL<?>, Integer> seen) {
+        Integer known = seen.get(f);
+        if (known != null) {
+            return known;
+        }
+        int id;
+        if (f instanceof TRUE) {
+            id = node(f, TRUE_NODE);
+        } else if (f instanceof AP) {
+            id = node(f, AP_NODE, ((AP<?>) f).getName());
+        } else if (f instanceof Not) {
+            int inner = intern(((Not<?>) f).getInner(), seen);
+            id = kind(inner) == NOT_NODE ? children.get(inner)[0] : node(f, NOT_NODE, inner);
+        } else if (f instanceof And) {
+            TreeSet<Integer> conjuncts = new TreeSet<>();
+            for (LTL<?> sub : ((And<?>) f).getSubformulas()) {
+                int c = intern(sub, seen);
+                if (kind(c) == AND_NODE) {
+                    for (int grandchild : children.get(c)) {
+                        conjuncts.add(grandchild);
+                    }
+                } else {
+                    conjuncts.add(c);
+                }
+            }
+            if (conjuncts.size() == 1) {
+                id = conjuncts.first();
+            } else {
+                Object[] key = new Object[conjuncts.size()];
+                int i = 0;
+                for (int c : conjuncts) {
+                    key[i++] = c;
+                }
+                id = node(f, AND_NODE, key);
+            }
+        } else if (f instanceof Next) {
+            id = node(f, NEXT_NODE, intern(((Next<?>) f).getInner(), seen));
+        } else if (f instanceof Until) {
+            Until<?> u = (Until<?>) f;
+            id = node(f, UNTIL_NODE, intern(u.getLeft(), seen), intern(u.getRight(), seen));
+        } else {
+            throw new FVMException("Unsupported LTL formula: " + f);
+        }
+        seen.put(f, id);
+        return id;
+    }
+
+    private int node(LTL<?> f, int kind, Object... args) {
+        List<Object> key = new ArrayList<>(args.length + 1);
+        key.add(kind);
+        key.addAll(Arrays.asList(args));
+        int id = nodes.intern(key);
+        if (id == children.size()) {
+            int[] ids = new int[kind == AP_NODE ? 0 : args.length];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = (Integer) args[i];
+            }
+            children.add(ids);
+            formulas.add(f);
+        }
+        return id;
+    }
+
+    private int kind(int id) {
+        return (Integer) nodes.valueOf(id).get(0);
+    }
+
+    private Compiled compile(int root) {
+        Closure closure = new Closure(root);
+        List<Long> elementary = new ArrayList<>();
+        closure.enumerate(0, 0L, elementary);
+
+        int n = elementary.size();
+        long[] sets = new long[n];
+        long[] mask = new long[n];
+        long[] value = new long[n];
+        boolean[] stuck = new boolean[n];
+        for (int b = 0; b < n; b++) {
+            sets[b] = elementary.get(b);
+            stuck[b] = !closure.successorConstraint(sets[b], mask, value, b);
+        }
+        int colors = Math.max(1, closure.untils.size());
+
+        Compiled compiled = new Compiled();
+        Map<Long, Integer> ids = new HashMap<>();
+        Deque<Long> worklist = new ArrayDeque<>();
+        List<Integer> initial = new ArrayList<>();
+        for (int b = 0; b < n; b++) {
+            if (closure.holds(sets[b], root)) {
+                initial.add(compiled.state(ids, worklist, closure, sets, b, 0));
+            }
+        }
+        compiled.initial = initial.stream().mapToInt(Integer::intValue).toArray();
+        List<Integer> from = new ArrayList<>();
+        List<Integer> to = new ArrayList<>();
+        while (!worklist.isEmpty()) {
+            long pair = worklist.poll();
+            int b = (int) (pair >>> 32);
+            int color = (int) pair;
+            int source = ids.get(pair);
+            if (color == 0 && closure.accepts(sets[b], 0)) {
+                compiled.accepting.set(source);
+            }
+            if (stuck[b]) {
+                continue;
+            }
+            int nextColor = closure.accepts(sets[b], color) ? (color + 1) % colors : color;
+            Set<Object> label = closure.label(sets[b]);
+            for (int c = 0; c < n; c++) {
+                if ((sets[c] & mask[b]) == value[b]) {
+                    from.add(source);
+                    to.add(compiled.state(ids, worklist, closure, sets, c, nextColor));
+                    compiled.labels.add(label);
+                }
+            }
+        }
+        compiled.from = from.stream().mapToInt(Integer::intValue).toArray();
+        compiled.to = to.stream().mapToInt(Integer::intValue).toArray();
+        return compiled;
+    }
+
+    /**
+     * The positive subformulas of a formula's closure, children before
+     * parents; bit {@code i} of an elementary set stands for {@code positive[i]}.
+     */
+    private final class Closure {
+        final int[] positive;
+        final int[] bitOf;
+        final List<Integer> untils = new ArrayList<>();
+        private final Map<Long, Set<Object>> labels = new HashMap<>();
+        private long apMask;
+
+        Closure(int root) {
+            List<Integer> order = new ArrayList<>();
+            collect(root, new HashSet<>(), order);
+            if (order.size() > MAX_CLOSURE) {
+                throw new FVMException("The formula has " + order.size() + " subformulas, at most " + MAX_CLOSURE + " are supported.");
+            }
+            positive = order.stream().mapToInt(Integer::intValue).toArray();
+            bitOf = new int[nodes.size()];
+            Arrays.fill(bitOf, -1);
+            for (int i = 0; i < positive.length; i++) {
+                bitOf[positive[i]] = i;
+                if (kind(positive[i]) == UNTIL_NODE) {
+                    untils.add(positive[i]);
+                } else if (kind(positive[i]) == AP_NODE) {
+                    apMask |= 1L << i;
+                }
+            }
+        }
+
+        private void collect(int id, Set<Integer> done, List<Integer> order) {
+            if (kind(id) == NOT_NODE) {
+                id = children.get(id)[0];
+            }
+            if (!done.add(id)) {
+                return;
+            }
+            for (int c : children.get(id)) {
+                collect(c, done, order);
+            }
+            order.add(id);
+        }
+
+        boolean holds(long set, int id) {
+            if (kind(id) == NOT_NODE) {
+                return (set & 1L << bitOf[children.get(id)[0]]) == 0;
+            }
+            return (set & 1L << bitOf[id]) != 0;
+        }
+
+        /**
+         * Enumerates the elementary sets, deciding the formulas in closure
+         * order. Only atomic propositions, nexts and undecided untils branch.
+         */
+        void enumerate(int i, long set, List<Long> into) {
+            if (i == positive.length) {
+                into.add(set);
+                return;
+            }
+            int id = positive[i];
+            long bit = 1L << i;
+            int[] args = children.get(id);
+            switch (kind(id)) {
+                case TRUE_NODE:
+                    enumerate(i + 1, set | bit, into);
+                    return;
+                case AND_NODE:
+                    for (int c : args) {
+                        if (!holds(set, c)) {
+                            enumerate(i + 1, set, into);
+                            return;
+                        }
+                    }
+                    enumerate(i + 1, set | bit, into);
+                    return;
+                case UNTIL_NODE:
+                    if (holds(set, args[1])) {
+                        enumerate(i + 1, set | bit, into);
+                    } else if (!holds(set, args[0])) {
+                        enumerate(i + 1, set, into);
+                    } else {
+                        enumerate(i + 1, set, into);
+                        enumerate(i + 1, set | bit, into);
+                    }
+                    return;
+                default:
+                    enumerate(i + 1, set, into);
+                    enumerate(i + 1, set | bit, into);
+            }
+        }
+
+        /**
+         * Computes the bits every successor of {@code set} must have: B' is a
+         * successor iff {@code (B' & mask[b]) == value[b]}.
+         *
+         * @return {@code false} if the constraints contradict each other.
+         */
+        boolean successorConstraint(long set, long[] mask, long[] value, int b) {
+            long m = 0;
+            long v = 0;
+            for (int i = 0; i < positive.length; i++) {
+                int id = positive[i];
+                int[] args = children.get(id);
+                int target;
+                boolean required;
+                if (kind(id) == NEXT_NODE) {
+                    int inner = args[0];
+                    boolean negated = kind(inner) == NOT_NODE;
+                    target = bitOf[negated ? children.get(inner)[0] : inner];
+                    required = ((set & 1L << i) != 0) != negated;
+                } else if (kind(id) == UNTIL_NODE && !holds(set, args[1])) {
+                    boolean in = (set & 1L << i) != 0;
+                    if (!in && !holds(set, args[0])) {
+                        continue;
+                    }
+                    target = i;
+                    required = in;
+                } else {
+                    continue;
+                }
+                long bit = 1L << target;
+                if ((m & bit) != 0 && ((v & bit) != 0) != required) {
+                    return false;
+                }
+                m |= bit;
+                if (required) {
+                    v |= bit;
+                }
+            }
+            mask[b] = m;
+            value[b] = v;
+            return true;
+        }
+
+        /**
+         * Whether {@code set} is in acceptance set {@code color}: the set of
+         * the color-th until, {@code {B | phi1 U phi2 not in B or phi2 in B}}.
+         */
+        boolean accepts(long set, int color) {
+            if (untils.isEmpty()) {
+                return true;
+            }
+            int until = untils.get(color);
+            return !holds(set, until) || holds(set, children.get(until)[1]);
+        }
+
+        Set<Object> label(long set) {
+            return labels.computeIfAbsent(set & apMask, aps -> {
+                Set<Object> label = new HashSet<>();
+                for (int i = 0; i < positive.length; i++) {
+                    if ((aps & 1L << i) != 0) {
+                        label.add(nodes.valueOf(positive[i]).get(1));
+                    }
+                }
+                return Collections.unmodifiableSet(label);
+            });
+        }
+
+        Set<LTL<?>> formulas(long set) {
+            Set<LTL<?>> members = new HashSet<>();
+            for (int i = 0; i < positive.length; i++) {
+                if ((set & 1L << i) != 0) {
+                    members.add(formulas.get(positive[i]));
+                }
+            }
+            return Collections.unmodifiableSet(members);
+        }
+    }
+
+    /**
+     * A translated NBA in index form. States are (elementary set, color)
+     * pairs, shared by all copies handed out.
+     */
+    private static final class Compiled {
+        final List<Object> states = new ArrayList<>();
+        final List<Set<Object>> labels = new ArrayList<>();
+        final BitSet accepting = new BitSet();
+        int[] initial;
+        int[] from;
+        int[] to;
+
+        int state(Map<Long, Integer> ids, Deque<Long> worklist, Closure closure, long[] sets, int b, int color) {
+            long key = (long) b << 32 | color;
+            Integer id = ids.get(key);
+            if (id == null) {
+                id = states.size();
+                ids.put(key, id);
+                states.add(new Pair<>(closure.formulas(sets[b]), color));
+                worklist.add(key);
+            }
+            return id;
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package il.ac.bgu.cs.fvm.impl;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A file of ints and longs addressed by byte position, mapped into memory in
+ * 1 GiB segments so it can grow past the 2 GiB limit of a single
+ * {@link MappedByteBuffer}. Segments are mapped as the file grows and stay
+ * mapped; the operating system keeps the pages in use in RAM and writes the
+ * rest back to disk.
+ * <p>
+ * Ints must sit at positions divisible by 4 and longs at positions divisible
+ * by 8, so that no value straddles two segments.
+ */
+final class MappedFile implements Closeable {
+    private static final int SEGMENT_BITS = 30;
+    private static final long SEGMENT_SIZE = 1L << SEGMENT_BITS;
+    private static final long SEGMENT_MASK = SEGMENT_SIZE - 1;
+    private static final long INITIAL_SIZE = 1 << 16;
+
+    private final Path path;
+    private final FileChannel channel;
+    private final List<MappedByteBuffer> segments = new ArrayList<>();
+    private long capacity;
+
+    MappedFile(Path path) {
+        this.path = path;
+        try {
+            channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    Path path() {
+        return path;
+    }
+
+    /**
+     * Makes the first {@code bytes} bytes addressable, at least doubling the
+     * mapped size so that appending costs amortized O(1) remaps. New space
+     * reads as zero.
+     */
+    void ensureCapacity(long bytes) {
+        if (bytes <= capacity) {
+            return;
+        }
+        long target = Math.max(bytes, Math.max(2 * capacity, INITIAL_SIZE));
+        int full = (int) (capacity >>> SEGMENT_BITS);
+        while (segments.size() > full) {
+            segments.remove(segments.size() - 1);
+        }
+        try {
+            for (long start = (long) full << SEGMENT_BITS; start < target; start += SEGMENT_SIZE) {
+                segments.add(channel.map(FileChannel.MapMode.READ_WRITE, start, Math.min(SEGMENT_SIZE, target - start)));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        capacity = target;
+    }
+
+    int getInt(long position) {
+        return segment(position).getInt((int) (position & SEGMENT_MASK));
+    }
+
+    void putInt(long position, int value) {
+        segment(position).putInt((int) (position & SEGMENT_MASK), value);
+    }
+
+    long getLong(long position) {
+        return segment(position).getLong((int) (position & SEGMENT_MASK));
+    }
+
+    void putLong(long position, long value) {
+        segment(position).putLong((int) (position & SEGMENT_MASK), value);
+    }
+
+    private MappedByteBuffer segment(long position) {
+        return segments.get((int) (position >>> SEGMENT_BITS));
+    }
+
+    /**
+     * Closes the channel. The mappings stay valid until they are garbage
+     * collected, as {@link FileChannel#map} specifies.
+     */
+    @Override
+    public void close() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
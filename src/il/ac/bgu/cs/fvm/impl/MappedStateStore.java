@@ -0,0 +1,182 @@
+package il.ac.bgu.cs.fvm.impl;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * A set of {@link StateVector}s kept in memory-mapped files, which numbers
+ * its states 0, 1, 2, ... in insertion order. Only the pages in use occupy
+ * RAM, so the set can grow as far as the disk allows.
+ * <p>
+ * Three files live in the store's directory:
+ * <ul>
+ * <li>{@code states.bin}, an append-only log of records: the slot count,
+ * then the slots.</li>
+ * <li>{@code offsets.bin}, the byte position of each state's record, by
+ * id.</li>
+ * <li>{@code index-<n>.bin}, an open-addressed hash table with linear
+ * probing. Each slot holds a state's 64-bit fingerprint and its id plus one,
+ * with 0 marking an empty slot. Probes compare fingerprints first, so a
+ * record is read only on a likely match. The table is kept at most half
+ * full; when it fills, a table twice as large is built from the stored
+ * fingerprints alone, and the old file is deleted.</li>
+ * </ul>
+ * Not thread-safe.
+ */
+final class MappedStateStore implements Closeable {
+    private static final int INITIAL_SLOTS = 1 << 16;
+    private static final int SLOT_BYTES = 16;
+
+    private final Path directory;
+    private final MappedFile records;
+    private final MappedFile offsets;
+    private MappedFile index;
+    private int generation;
+    private long mask;
+    private long recordBytes;
+    private int size;
+
+    MappedStateStore(Path directory) {
+        this.directory = directory;
+        records = new MappedFile(directory.resolve("states.bin"));
+        offsets = new MappedFile(directory.resolve("offsets.bin"));
+        index = newIndex(INITIAL_SLOTS);
+    }
+
+    /**
+     * @return the id of {@code state}, adding it if it is new. The state is
+     * new exactly when the returned id equals the size before the call.
+     */
+    int intern(StateVector state) {
+        long fingerprint = state.fingerprint();
+        long slot = BitstateTable.mix(fingerprint) & mask;
+        while (true) {
+            long position = slot * SLOT_BYTES;
+            long stored = index.getLong(position + 8);
+            if (stored == 0) {
+                int id = append(state);
+                index.putLong(position, fingerprint);
+                index.putLong(position + 8, id + 1L);
+                if (2L * size > mask + 1) {
+                    grow();
+                }
+                return id;
+            }
+            if (index.getLong(position) == fingerprint && matches(state, (int) (stored - 1))) {
+                return (int) (stored - 1);
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /**
+     * @return the id of {@code state}, or -1 if it is not in the store.
+     */
+    int idOf(StateVector state) {
+        long fingerprint = state.fingerprint();
+        long slot = BitstateTable.mix(fingerprint) & mask;
+        while (true) {
+            long position = slot * SLOT_BYTES;
+            long stored = index.getLong(position + 8);
+            if (stored == 0) {
+                return -1;
+            }
+            if (index.getLong(position) == fingerprint && matches(state, (int) (stored - 1))) {
+                return (int) (stored - 1);
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    StateVector get(int id) {
+        long position = offsets.getLong(8L * id);
+        int[] slots = new int[records.getInt(position)];
+        for (int i = 0; i < slots.length; i++) {
+            slots[i] = records.getInt(position + 4L * (i + 1));
+        }
+        return StateVector.of(slots);
+    }
+
+    int size() {
+        return size;
+    }
+
+    private int append(StateVector state) {
+        if (size == Integer.MAX_VALUE) {
+            throw new IllegalStateException("A mapped state store holds at most " + Integer.MAX_VALUE + " states.");
+        }
+        long position = recordBytes;
+        recordBytes += 4L * (state.length() + 1);
+        records.ensureCapacity(recordBytes);
+        records.putInt(position, state.length());
+        for (int i = 0; i < state.length(); i++) {
+            records.putInt(position + 4L * (i + 1), state.get(i));
+        }
+        offsets.ensureCapacity(8L * (size + 1));
+        offsets.putLong(8L * size, position);
+        return size++;
+    }
+
+    private boolean matches(StateVector state, int id) {
+        long position = offsets.getLong(8L * id);
+        if (records.getInt(position) != state.length()) {
+            return false;
+        }
+        for (int i = 0; i < state.length(); i++) {
+            if (records.getInt(position + 4L * (i + 1)) != state.get(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private MappedFile newIndex(long slots) {
+        MappedFile file = new MappedFile(directory.resolve("index-" + generation++ + ".bin"));
+        file.ensureCapacity(slots * SLOT_BYTES);
+        mask = slots - 1;
+        return file;
+    }
+
+    private void grow() {
+        MappedFile old = index;
+        long oldSlots = mask + 1;
+        index = newIndex(2 * oldSlots);
+        for (long slot = 0; slot < oldSlots; slot++) {
+            long stored = old.getLong(slot * SLOT_BYTES + 8);
+            if (stored == 0) {
+                continue;
+            }
+            long fingerprint = old.getLong(slot * SLOT_BYTES);
+            long target = BitstateTable.mix(fingerprint) & mask;
+            while (index.getLong(target * SLOT_BYTES + 8) != 0) {
+                target = (target + 1) & mask;
+            }
+            index.putLong(target * SLOT_BYTES, fingerprint);
+            index.putLong(target * SLOT_BYTES + 8, stored);
+        }
+        old.close();
+        delete(old.path());
+    }
+
+    /**
+     * Deletes a file whose mapping may still be alive. Some platforms refuse
+     * that until the mapping is collected, so the file is then left for the
+     * JVM to delete on exit.
+     */
+    private static void delete(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            path.toFile().deleteOnExit();
+        }
+    }
+
+    @Override
+    public void close() {
+        records.close();
+        offsets.close();
+        index.close();
+    }
+}
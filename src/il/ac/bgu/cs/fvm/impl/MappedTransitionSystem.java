@@ -0,0 +1,499 @@
+package il.ac.bgu.cs.fvm.impl;
+
+import il.ac.bgu.cs.fvm.exceptions.StateNotFoundException;
+import il.ac.bgu.cs.fvm.transitionsystem.Transition;
+
+import java.io.Closeable;
+import java.nio.file.Path;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Read-only transition system over memory-mapped files, for state spaces
+ * that do not fit on the heap. {@link #explore} runs a breadth-first search
+ * whose visited set and queue are a {@link MappedStateStore}: states are
+ * numbered as they are discovered and expanded in that order, so the next
+ * state to expand is just a counter. Transitions go to an append-only edge
+ * log of {@code (action id, target id)} pairs in {@code edges.bin}. Because
+ * states are expanded in id order, each state's edges form one contiguous
+ * run, and {@code starts.bin} records where each run begins.
+ * <p>
+ * Queries read the files directly. Successor queries are a lookup of the
+ * state's id plus a scan of its run. The first predecessor query builds a
+ * reversed copy of the log with a counting sort, in
+ * {@code reverse-starts.bin} and {@code reverse-edges.bin}. Labels are
+ * recomputed from the packed state. The actions, the atomic propositions and
+ * the initial states are kept in memory, and so is whatever the space
+ * retains to pack and unpack states ({@link StateSpace#retainedValues()}):
+ * for a channel system, every distinct variable value and channel content,
+ * which decoding and {@code find} look up by id. The state, transition and
+ * labeling collections are views that decode from the files as they are
+ * iterated.
+ */
+public class MappedTransitionSystem<S, A, P> implements IndexedTransitionSystem<S, A, P>, Closeable {
+    private final StateSpace<StateVector, A, P> space;
+    private final Function<? super StateVector, ? extends S> output;
+    private final Function<Object, StateVector> find;
+    private final Path directory;
+    private final MappedStateStore states;
+    private final MappedFile starts;
+    private final MappedFile edges;
+    private final Interner<A> actions = new Interner<>();
+    private final Set<A> actionSet = new LinkedHashSet<>();
+    private final Set<P> atomicPropositions = new HashSet<>();
+    private final Set<Integer> initials = new LinkedHashSet<>();
+    private long edgeCount;
+    private String name;
+    private MappedFile reverseStarts;
+    private MappedFile reverseEdges;
+
+    private MappedTransitionSystem(StateSpace<StateVector, A, P> space, Path directory, Function<? super StateVector, ? extends S> output, Function<Object, StateVector> find) {
+        this.space = space;
+        this.output = output;
+        this.find = find;
+        this.directory = directory;
+        this.states = new MappedStateStore(directory);
+        this.starts = new MappedFile(directory.resolve("starts.bin"));
+        this.edges = new MappedFile(directory.resolve("edges.bin"));
+    }
+
+    /**
+     * Explores {@code space} into files in {@code directory}, replacing any
+     * files of an earlier exploration there.
+     *
+     * @param output converts packed states to the public state type.
+     * @param find   converts a public state back to its packed form, or to
+     *               {@code null} if it cannot be a state of {@code space}.
+     */
+    static <S, A, P> MappedTransitionSystem<S, A, P> explore(StateSpace<StateVector, A, P> space, String name, Path directory,
+                                                             Function<? super StateVector, ? extends S> output, Function<Object, StateVector> find) {
+        MappedTransitionSystem<S, A, P> ts = new MappedTransitionSystem<>(space, directory, output, find);
+        ts.setName(name);
+        for (StateVector initial : space.initialStates()) {
+            ts.initials.add(ts.states.intern(initial));
+        }
+        Set<Long> seen = new HashSet<>();
+        for (int id = 0; id < ts.states.size(); id++) {
+            StateVector state = ts.states.get(id);
+            ts.starts.ensureCapacity(8L * (id + 2));
+            ts.starts.putLong(8L * id, ts.edgeCount);
+            seen.clear();
+            space.expand(state, (action, next) -> {
+                int a = ts.actions.intern(action);
+                int to = ts.states.intern(next);
+                if (seen.add((long) a << 32 | to)) {
+                    ts.actionSet.add(action);
+                    ts.append(a, to);
+                }
+            });
+            ts.atomicPropositions.addAll(space.labels(state));
+        }
+        ts.starts.ensureCapacity(8L * (ts.states.size() + 1));
+        ts.starts.putLong(8L * ts.states.size(), ts.edgeCount);
+        return ts;
+    }
+
+    private void append(int action, int to) {
+        edges.ensureCapacity(8 * (edgeCount + 1));
+        edges.putInt(8 * edgeCount, action);
+        edges.putInt(8 * edgeCount + 4, to);
+        edgeCount++;
+    }
+
+    private int idOf(Object state) {
+        StateVector packed = find.apply(state);
+        return packed == null ? -1 : states.idOf(packed);
+    }
+
+    private int existingId(Object state) {
+        int id = idOf(state);
+        if (id < 0) {
+            throw new StateNotFoundException(state);
+        }
+        return id;
+    }
+
+    private S stateOf(int id) {
+        return output.apply(states.get(id));
+    }
+
+    private long start(int id) {
+        return starts.getLong(8L * id);
+    }
+
+    @Override
+    public Map<A, Set<S>> outgoing(S s) {
+        int id = idOf(s);
+        if (id < 0) {
+            return Collections.emptyMap();
+        }
+        Map<A, Set<S>> result = new HashMap<>();
+        for (long e = start(id); e < start(id + 1); e++) {
+            result.computeIfAbsent(actions.valueOf(edges.getInt(8 * e)), k -> new HashSet<>()).add(stateOf(edges.getInt(8 * e + 4)));
+        }
+        return result;
+    }
+
+    @Override
+    public Set<S> successors(S s) {
+        int id = idOf(s);
+        Set<S> result = new HashSet<>();
+        if (id >= 0) {
+            for (long e = start(id); e < start(id + 1); e++) {
+                result.add(stateOf(edges.getInt(8 * e + 4)));
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public Set<S> successors(S s, A a) {
+        return outgoing(s).getOrDefault(a, Collections.emptySet());
+    }
+
+    @Override
+    public Set<S> predecessors(S s) {
+        return predecessors(s, -1);
+    }
+
+    @Override
+    public Set<S> predecessors(S s, A a) {
+        int action = actions.idOf(a);
+        return action < 0 ? new HashSet<>() : predecessors(s, action);
+    }
+
+    /**
+     * @param action an action id, or -1 for any action.
+     */
+    private Set<S> predecessors(S s, int action) {
+        int id = idOf(s);
+        Set<S> result = new HashSet<>();
+        if (id < 0) {
+            return result;
+        }
+        buildReverse();
+        for (long e = reverseStarts.getLong(8L * id); e < reverseStarts.getLong(8L * (id + 1)); e++) {
+            if (action < 0 || reverseEdges.getInt(8 * e) == action) {
+                result.add(stateOf(reverseEdges.getInt(8 * e + 4)));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Counting sort of the edge log by target: count each target's
+     * in-degree, turn the counts into run ends, then walk the log and fill
+     * each run from its end down.
+     */
+    private synchronized void buildReverse() {
+        if (reverseEdges != null) {
+            return;
+        }
+        int n = states.size();
+        MappedFile runs = new MappedFile(directory.resolve("reverse-starts.bin"));
+        MappedFile reversed = new MappedFile(directory.resolve("reverse-edges.bin"));
+        runs.ensureCapacity(8L * (n + 1));
+        reversed.ensureCapacity(8 * Math.max(edgeCount, 1));
+        for (long e = 0; e < edgeCount; e++) {
+            long position = 8L * edges.getInt(8 * e + 4);
+            runs.putLong(position, runs.getLong(position) + 1);
+        }
+        long end = 0;
+        for (int id = 0; id < n; id++) {
+            end += runs.getLong(8L * id);
+            runs.putLong(8L * id, end);
+        }
+        runs.putLong(8L * n, edgeCount);
+        for (int from = 0; from < n; from++) {
+            for (long e = start(from); e < start(from + 1); e++) {
+                long position = 8L * edges.getInt(8 * e + 4);
+                long slot = runs.getLong(position) - 1;
+                runs.putLong(position, slot);
+                reversed.putInt(8 * slot, edges.getInt(8 * e));
+                reversed.putInt(8 * slot + 4, from);
+            }
+        }
+        reverseStarts = runs;
+        reverseEdges = reversed;
+    }
+
+    @Override
+    public boolean containsState(S s) {
+        return idOf(s) >= 0;
+    }
+
+    @Override
+    public boolean hasSuccessors(S s) {
+        int id = idOf(s);
+        return id >= 0 && start(id) < start(id + 1);
+    }
+
+    @Override
+    public boolean hasTransition(S from, A a, S to) {
+        int fromId = idOf(from);
+        int action = actions.idOf(a);
+        int toId = idOf(to);
+        if (fromId < 0 || action < 0 || toId < 0) {
+            return false;
+        }
+        for (long e = start(fromId); e < start(fromId + 1); e++) {
+            if (edges.getInt(8 * e) == action && edges.getInt(8 * e + 4) == toId) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    @Override
+    public Set<A> getActions() {
+        return Collections.unmodifiableSet(actionSet);
+    }
+
+    @Override
+    public Set<P> getAtomicPropositions() {
+        return Collections.unmodifiableSet(atomicPropositions);
+    }
+
+    @Override
+    public Set<P> getLabel(S s) {
+        StateVector packed = find.apply(s);
+        if (packed == null || states.idOf(packed) < 0) {
+            throw new StateNotFoundException(s);
+        }
+        return new HashSet<>(space.labels(packed));
+    }
+
+    @Override
+    public Set<S> getInitialStates() {
+        Set<S> result = new HashSet<>();
+        for (int id : initials) {
+            result.add(stateOf(id));
+        }
+        return result;
+    }
+
+    @Override
+    public Set<S> getStates() {
+        return new AbstractSet<S>() {
+            @Override
+            public Iterator<S> iterator() {
+                return new Iterator<S>() {
+                    private int next;
+
+                    @Override
+                    public boolean hasNext() {
+                        return next < states.size();
+                    }
+
+                    @Override
+                    public S next() {
+                        if (!hasNext()) {
+                            throw new NoSuchElementException();
+                        }
+                        return stateOf(next++);
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return states.size();
+            }
+
+            @Override
+            public boolean contains(Object o) {
+                return idOf(o) >= 0;
+            }
+        };
+    }
+
+    @Override
+    public Set<Transition<S, A>> getTransitions() {
+        return new AbstractSet<Transition<S, A>>() {
+            @Override
+            public Iterator<Transition<S, A>> iterator() {
+                return new Iterator<Transition<S, A>>() {
+                    private int from;
+                    private S fromState;
+                    private long next;
+
+                    @Override
+                    public boolean hasNext() {
+                        return next < edgeCount;
+                    }
+
+                    @Override
+                    public Transition<S, A> next() {
+                        if (!hasNext()) {
+                            throw new NoSuchElementException();
+                        }
+                        while (start(from + 1) <= next) {
+                            from++;
+                            fromState = null;
+                        }
+                        if (fromState == null) {
+                            fromState = stateOf(from);
+                        }
+                        Transition<S, A> t = new Transition<>(fromState, actions.valueOf(edges.getInt(8 * next)), stateOf(edges.getInt(8 * next + 4)));
+                        next++;
+                        return t;
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return (int) Math.min(edgeCount, Integer.MAX_VALUE);
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public boolean contains(Object o) {
+                if (!(o instanceof Transition)) {
+                    return false;
+                }
+                Transition<S, A> t = (Transition<S, A>) o;
+                return hasTransition(t.getFrom(), t.getAction(), t.getTo());
+            }
+        };
+    }
+
+    @Override
+    public Map<S, Set<P>> getLabelingFunction() {
+        return new AbstractMap<S, Set<P>>() {
+            @Override
+            public Set<Entry<S, Set<P>>> entrySet() {
+                return new AbstractSet<Entry<S, Set<P>>>() {
+                    @Override
+                    public Iterator<Entry<S, Set<P>>> iterator() {
+                        return new Iterator<Entry<S, Set<P>>>() {
+                            private int next;
+
+                            @Override
+                            public boolean hasNext() {
+                                return next < states.size();
+                            }
+
+                            @Override
+                            public Entry<S, Set<P>> next() {
+                                if (!hasNext()) {
+                                    throw new NoSuchElementException();
+                                }
+                                StateVector packed = states.get(next++);
+                                return new SimpleImmutableEntry<>(output.apply(packed), new HashSet<>(space.labels(packed)));
+                            }
+                        };
+                    }
+
+                    @Override
+                    public int size() {
+                        return states.size();
+                    }
+                };
+            }
+
+            @Override
+            public boolean containsKey(Object key) {
+                return idOf(key) >= 0;
+            }
+
+            @Override
+            public Set<P> get(Object key) {
+                StateVector packed = find.apply(key);
+                return packed == null || states.idOf(packed) < 0 ? null : new HashSet<>(space.labels(packed));
+            }
+        };
+    }
+
+    /**
+     * Closes the underlying files. The system must not be used afterwards.
+     */
+    @Override
+    public synchronized void close() {
+        states.close();
+        starts.close();
+        edges.close();
+        if (reverseEdges != null) {
+            reverseStarts.close();
+            reverseEdges.close();
+        }
+    }
+
+    @Override
+    public void addAction(A anAction) {
+        throw readOnly();
+    }
+
+    @Override
+    public void setInitial(S aState, boolean isInitial) {
+        throw readOnly();
+    }
+
+    @Override
+    public void addState(S state) {
+        throw readOnly();
+    }
+
+    @Override
+    public void addTransition(Transition<S, A> t) {
+        throw readOnly();
+    }
+
+    @Override
+    public void addAtomicProposition(P p) {
+        throw readOnly();
+    }
+
+    @Override
+    public void addToLabel(S s, P l) {
+        throw readOnly();
+    }
+
+    @Override
+    public void removeAction(A action) {
+        throw readOnly();
+    }
+
+    @Override
+    public void removeAtomicProposition(P p) {
+        throw readOnly();
+    }
+
+    @Override
+    public void removeLabel(S s, P l) {
+        throw readOnly();
+    }
+
+    @Override
+    public void removeState(S state) {
+        throw readOnly();
+    }
+
+    @Override
+    public void removeTransition(Transition<S, A> t) {
+        throw readOnly();
+    }
+
+    private UnsupportedOperationException readOnly() {
+        return new UnsupportedOperationException("A memory-mapped transition system is read-only.");
+    }
+}
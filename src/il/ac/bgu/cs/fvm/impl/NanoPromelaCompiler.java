@@ -0,0 +1,286 @@
+package il.ac.bgu.cs.fvm.impl;
+
+import il.ac.bgu.cs.fvm.nanopromela.NanoPromelaLexer;
+import il.ac.bgu.cs.fvm.nanopromela.NanoPromelaParser;
+import il.ac.bgu.cs.fvm.nanopromela.NanoPromelaParser.OptionContext;
+import il.ac.bgu.cs.fvm.nanopromela.NanoPromelaParser.StmtContext;
+import il.ac.bgu.cs.fvm.programgraph.PGTransition;
+import il.ac.bgu.cs.fvm.programgraph.ProgramGraph;
+import il.ac.bgu.cs.fvm.exceptions.FVMException;
+import org.antlr.v4.runtime.ANTLRInputStream;
+import org.antlr.v4.runtime.BailErrorStrategy;
+import org.antlr.v4.runtime.BaseErrorListener;
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CommonTokenFactory;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.DefaultErrorStrategy;
+import org.antlr.v4.runtime.RecognitionException;
+import org.antlr.v4.runtime.Recognizer;
+import org.antlr.v4.runtime.UnbufferedCharStream;
+import org.antlr.v4.runtime.atn.PredictionMode;
+import org.antlr.v4.runtime.misc.ParseCancellationException;
+
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compiles NanoPromela source to program graphs.
+ * <p>
+ * Compiled graphs are cached by the SHA-256 digest of the source's UTF-8
+ * bytes. Streams are lexed through an {@link UnbufferedCharStream} with
+ * copied token text, and digested on the way, so the source is never held
+ * whole; the cache is consulted once the tokens are in, and a hit skips
+ * parsing. Strings are hashed first, so a hit on one costs no lexing either.
+ * On a miss the parser first runs in SLL mode with a bail-out error
+ * strategy, which is enough for nearly all input, and only falls back to
+ * full LL prediction if SLL fails. A syntax error in either the lexer or the
+ * LL pass throws an {@link FVMException}; a graph is cached only after its
+ * source parsed.
+ * <p>
+ * Locations are statement texts, sequences are joined with {@code ;}, and
+ * {@code ""} is the exit location. Each returned graph is a fresh copy, so
+ * callers may modify it.
+ */
+final class NanoPromelaCompiler {
+    static final int CACHE_SIZE = 256;
+
+    private final Map<ByteBuffer, ProgramGraph<String, String>> cache = new LinkedHashMap<ByteBuffer, ProgramGraph<String, String>>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<ByteBuffer, ProgramGraph<String, String>> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+
+    ProgramGraph<String, String> fromFile(String filename) throws IOException {
+        try (InputStream in = new BufferedInputStream(new FileInputStream(filename))) {
+            return fromStream(in);
+        }
+    }
+
+    ProgramGraph<String, String> fromStream(InputStream in) {
+        MessageDigest sha = sha256();
+        NanoPromelaLexer lexer = lexer(new UnbufferedCharStream(new InputStreamReader(new DigestInputStream(in, sha), StandardCharsets.UTF_8)));
+        lexer.setTokenFactory(new CommonTokenFactory(true));
+        CommonTokenStream tokens = new CommonTokenStream(lexer);
+        tokens.fill();
+        return compile(ByteBuffer.wrap(sha.digest()), tokens);
+    }
+
+    ProgramGraph<String, String> fromString(String source) {
+        ByteBuffer key = ByteBuffer.wrap(sha256().digest(source.getBytes(StandardCharsets.UTF_8)));
+        ProgramGraph<String, String> cached = cached(key);
+        if (cached != null) {
+            return cached;
+        }
+        return compile(key, new CommonTokenStream(lexer(new ANTLRInputStream(source))));
+    }
+
+    private static NanoPromelaLexer lexer(CharStream chars) {
+        NanoPromelaLexer lexer = new NanoPromelaLexer(chars);
+        lexer.removeErrorListeners();
+        lexer.addErrorListener(SyntaxErrors.INSTANCE);
+        return lexer;
+    }
+
+    private ProgramGraph<String, String> compile(ByteBuffer key, CommonTokenStream tokens) {
+        ProgramGraph<String, String> cached = cached(key);
+        if (cached != null) {
+            return cached;
+        }
+        ProgramGraph<String, String> pg = new Translation(parse(tokens)).pg;
+        synchronized (cache) {
+            cache.put(key, pg);
+        }
+        return copy(pg);
+    }
+
+    private ProgramGraph<String, String> cached(ByteBuffer key) {
+        ProgramGraph<String, String> pg;
+        synchronized (cache) {
+            pg = cache.get(key);
+        }
+        return pg == null ? null : copy(pg);
+    }
+
+    private static StmtContext parse(CommonTokenStream tokens) {
+        NanoPromelaParser parser = new NanoPromelaParser(tokens);
+        parser.getInterpreter().setPredictionMode(PredictionMode.SLL);
+        parser.removeErrorListeners();
+        parser.setErrorHandler(new BailErrorStrategy());
+        try {
+            return parser.spec().stmt();
+        } catch (ParseCancellationException e) {
+            tokens.seek(0);
+            parser.reset();
+            parser.addErrorListener(SyntaxErrors.INSTANCE);
+            parser.setErrorHandler(new DefaultErrorStrategy());
+            parser.getInterpreter().setPredictionMode(PredictionMode.LL);
+            return parser.spec().stmt();
+        }
+    }
+
+    /**
+     * Turns the first syntax error into an exception, instead of printing it
+     * and recovering into a partial program.
+     */
+    private static final class SyntaxErrors extends BaseErrorListener {
+        static final SyntaxErrors INSTANCE = new SyntaxErrors();
+
+        @Override
+        public void syntaxError(Recognizer<?, ?> recognizer, Object offendingSymbol, int line, int charPositionInLine, String msg, RecognitionException e) {
+            throw new FVMException("NanoPromela syntax error at " + line + ":" + charPositionInLine + ": " + msg);
+        }
+    }
+
+    private static ProgramGraph<String, String> copy(ProgramGraph<String, String> pg) {
+        ProgramGraph<String, String> copy = new ProgramGraphImplementation<>();
+        copy.setName(pg.getName());
+        pg.getLocations().forEach(copy::addLocation);
+        for (String l : pg.getInitialLocations()) {
+            copy.setInitial(l, true);
+        }
+        pg.getTransitions().forEach(copy::addTransition);
+        pg.getInitalizations().forEach(copy::addInitalization);
+        return copy;
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * One compilation. A location is a sequence of statements still to run;
+     * its transitions are computed once per location text.
+     */
+    private static final class Translation {
+        final ProgramGraph<String, String> pg = new ProgramGraphImplementation<>();
+        private final Map<String, List<Step>> steps = new HashMap<>();
+
+        Translation(StmtContext program) {
+            List<StmtContext> initial = flatten(program, new ArrayList<>());
+            String start = text(initial);
+            pg.addLocation(start);
+            pg.setInitial(start, true);
+            Deque<List<StmtContext>> worklist = new ArrayDeque<>();
+            worklist.add(initial);
+            while (!worklist.isEmpty()) {
+                List<StmtContext> location = worklist.poll();
+                String from = text(location);
+                for (Step step : steps(location)) {
+                    String to = text(step.target);
+                    if (!pg.getLocations().contains(to)) {
+                        pg.addLocation(to);
+                        worklist.add(step.target);
+                    }
+                    pg.addTransition(new PGTransition<>(from, step.condition, step.action, to));
+                }
+            }
+        }
+
+        private List<Step> steps(List<StmtContext> location) {
+            if (location.isEmpty()) {
+                return Collections.emptyList();
+            }
+            String key = text(location);
+            List<Step> known = steps.get(key);
+            if (known != null) {
+                return known;
+            }
+            List<StmtContext> rest = location.subList(1, location.size());
+            List<Step> result = new ArrayList<>();
+            for (Step first : firstSteps(location.get(0))) {
+                List<StmtContext> target = new ArrayList<>(first.target);
+                target.addAll(rest);
+                result.add(new Step(first.condition, first.action, target));
+            }
+            steps.put(key, result);
+            return result;
+        }
+
+        private List<Step> firstSteps(StmtContext stmt) {
+            List<Step> result = new ArrayList<>();
+            if (stmt.ifstmt() != null) {
+                for (OptionContext option : stmt.ifstmt().option()) {
+                    for (Step step : steps(flatten(option.stmt(), new ArrayList<>()))) {
+                        result.add(new Step(guard(option, step.condition), step.action, step.target));
+                    }
+                }
+            } else if (stmt.dostmt() != null) {
+                StringBuilder exit = new StringBuilder();
+                for (OptionContext option : stmt.dostmt().option()) {
+                    for (Step step : steps(flatten(option.stmt(), new ArrayList<>()))) {
+                        List<StmtContext> target = new ArrayList<>(step.target);
+                        target.add(stmt);
+                        result.add(new Step(guard(option, step.condition), step.action, target));
+                    }
+                    exit.append(exit.length() == 0 ? "" : "||").append('(').append(option.boolexpr().getText()).append(')');
+                }
+                result.add(new Step("!(" + exit + ")", "", Collections.emptyList()));
+            } else if (stmt.skipstmt() != null) {
+                result.add(new Step("", "", Collections.emptyList()));
+            } else {
+                result.add(new Step("", stmt.getText(), Collections.emptyList()));
+            }
+            return result;
+        }
+
+        private static String guard(OptionContext option, String condition) {
+            String guard = "(" + option.boolexpr().getText() + ")";
+            return condition.isEmpty() ? guard : guard + " && (" + condition + ")";
+        }
+
+        private static List<StmtContext> flatten(StmtContext stmt, List<StmtContext> into) {
+            if (stmt.stmt().isEmpty()) {
+                into.add(stmt);
+            } else {
+                for (StmtContext part : stmt.stmt()) {
+                    flatten(part, into);
+                }
+            }
+            return into;
+        }
+
+        private static String text(List<StmtContext> location) {
+            StringBuilder text = new StringBuilder();
+            for (StmtContext stmt : location) {
+                if (text.length() > 0) {
+                    text.append(';');
+                }
+                text.append(stmt.getText());
+            }
+            return text.toString();
+        }
+    }
+
+    private static final class Step {
+        final String condition;
+        final String action;
+        final List<StmtContext> target;
+
+        Step(String condition, String action, List<StmtContext> target) {
+            this.condition = condition;
+            this.action = action;
+            this.target = target;
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package il.ac.bgu.cs.fvm.impl;
+
+import il.ac.bgu.cs.fvm.automata.Automaton;
+import il.ac.bgu.cs.fvm.exceptions.FVMException;
+import il.ac.bgu.cs.fvm.transitionsystem.TransitionSystem;
+import il.ac.bgu.cs.fvm.verification.VerificationFailed;
+import il.ac.bgu.cs.fvm.verification.VerificationResult;
+import il.ac.bgu.cs.fvm.verification.VerificationSucceeded;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * On-the-fly emptiness check of {@code ts} x {@code aut}, where {@code aut}
+ * accepts the bad behaviors. The product is never built. Its states are
+ * generated as the search reaches them and are named by int ids
+ * ({@code tsId * |Q| + q}), and the two visited sets are bit sets over those
+ * ids.
+ * <p>
+ * The search is the nested depth-first search of Courcoubetis et al., made
+ * iterative. When the outer search backtracks from an accepting state, an
+ * inner search looks for a cycle back to it. The first cycle found ends the
+ * search, so a bug close to the initial states is reported without exploring
+ * the rest of the product.
+ */
+final class NestedDfs<S, Q, P> {
+    private final TransitionSystem<S, ?, P> ts;
+    private final Automaton<Q, P> aut;
+    private final Function<S, Set<S>> post;
+    private final Interner<S> states = new Interner<>();
+    private final Interner<Q> autStates = new Interner<>();
+    private final BitSet accepting = new BitSet();
+    private final BitSet outerVisited = new BitSet();
+    private final BitSet innerVisited = new BitSet();
+    private final int autCount;
+
+    NestedDfs(TransitionSystem<S, ?, P> ts, Automaton<Q, P> aut) {
+        this.ts = ts;
+        this.aut = aut;
+        this.post = Reachability.successorFunction(ts);
+        aut.getInitialStates().forEach(autStates::intern);
+        for (Map.Entry<Q, Map<Set<P>, Set<Q>>> entry : aut.getTransitions().entrySet()) {
+            autStates.intern(entry.getKey());
+            for (Set<Q> targets : entry.getValue().values()) {
+                targets.forEach(autStates::intern);
+            }
+        }
+        for (Q q : aut.getAcceptingStates()) {
+            accepting.set(autStates.intern(q));
+        }
+        autCount = autStates.size();
+    }
+
+    VerificationResult<S> run() {
+        Deque<Frame> path = new ArrayDeque<>();
+        for (int start : initialStates()) {
+            if (outerVisited.get(start)) {
+                continue;
+            }
+            outerVisited.set(start);
+            path.push(new Frame(start));
+            while (!path.isEmpty()) {
+                Frame top = path.peek();
+                if (top.hasNext()) {
+                    int next = top.next();
+                    if (!outerVisited.get(next)) {
+                        outerVisited.set(next);
+                        path.push(new Frame(next));
+                    }
+                    continue;
+                }
+                path.pop();
+                if (accepting.get(automatonState(top.id))) {
+                    List<S> cycle = cycleThrough(top.id);
+                    if (cycle != null) {
+                        VerificationFailed<S> failure = new VerificationFailed<>();
+                        List<S> prefix = new ArrayList<>(path.size());
+                        for (Iterator<Frame> frames = path.descendingIterator(); frames.hasNext(); ) {
+                            prefix.add(tsState(frames.next().id));
+                        }
+                        failure.setPrefix(prefix);
+                        failure.setCycle(cycle);
+                        return failure;
+                    }
+                }
+            }
+        }
+        return new VerificationSucceeded<>();
+    }
+
+    /**
+     * @return the TS states of a cycle from {@code seed} back to it, starting
+     * at {@code seed} and not repeating it at the end, or {@code null}.
+     */
+    private List<S> cycleThrough(int seed) {
+        Deque<Frame> path = new ArrayDeque<>();
+        innerVisited.set(seed);
+        path.push(new Frame(seed));
+        while (!path.isEmpty()) {
+            Frame top = path.peek();
+            if (!top.hasNext()) {
+                path.pop();
+                continue;
+            }
+            int next = top.next();
+            if (next == seed) {
+                List<S> cycle = new ArrayList<>(path.size());
+                for (Iterator<Frame> frames = path.descendingIterator(); frames.hasNext(); ) {
+                    cycle.add(tsState(frames.next().id));
+                }
+                return cycle;
+            }
+            if (!innerVisited.get(next)) {
+                innerVisited.set(next);
+                path.push(new Frame(next));
+            }
+        }
+        return null;
+    }
+
+    private List<Integer> initialStates() {
+        List<Integer> initials = new ArrayList<>();
+        for (S s : ts.getInitialStates()) {
+            for (Q q0 : aut.getInitialStates()) {
+                addMoves(initials, s, q0);
+            }
+        }
+        return initials;
+    }
+
+    private int[] successors(int id) {
+        Q q = autStates.valueOf(automatonState(id));
+        List<Integer> successors = new ArrayList<>();
+        for (S t : post.apply(tsState(id))) {
+            addMoves(successors, t, q);
+        }
+        int[] result = new int[successors.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = successors.get(i);
+        }
+        return result;
+    }
+
+    /**
+     * Adds the product states {@code (t, p)} with {@code p} in
+     * {@code delta(q, L(t))}.
+     */
+    private void addMoves(Collection<Integer> into, S t, Q q) {
+        Set<Q> targets = aut.nextStates(q, ts.getLabel(t));
+        if (targets == null) {
+            return;
+        }
+        for (Q p : targets) {
+            into.add(productId(states.intern(t), autStates.idOf(p)));
+        }
+    }
+
+    private int productId(int tsId, int q) {
+        long id = (long) tsId * autCount + q;
+        if (id > Integer.MAX_VALUE) {
+            throw new FVMException("The product has too many states to check on the fly.");
+        }
+        return (int) id;
+    }
+
+    private S tsState(int id) {
+        return states.valueOf(id / autCount);
+    }
+
+    private int automatonState(int id) {
+        return id % autCount;
+    }
+
+    /**
+     * A product state on a search stack, with the successors not yet tried.
+     */
+    private final class Frame {
+        final int id;
+        private final int[] successors;
+        private int next;
+
+        Frame(int id) {
+            this.id = id;
+            this.successors = successors(id);
+        }
+
+        boolean hasNext() {
+            return next < successors.length;
+        }
+
+        int next() {
+            return successors[next++];
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package il.ac.bgu.cs.fvm.impl;
+
+import il.ac.bgu.cs.fvm.automata.Automaton;
+import il.ac.bgu.cs.fvm.transitionsystem.Transition;
+import il.ac.bgu.cs.fvm.transitionsystem.TransitionSystem;
+import il.ac.bgu.cs.fvm.util.Pair;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Builds the reachable part of {@code ts} x {@code aut} into a
+ * {@link CompactTransitionSystem}. A product state {@code (s, q)} is labelled
+ * with {@code q}, and {@code (s, q) --a--> (t, p)} when {@code s --a--> t}
+ * and {@code p} is in {@code delta(q, L(t))}.
+ * <p>
+ * Each distinct TS label is interned once, and {@code delta} is memoized by
+ * (automaton state id, label id). A step therefore costs one lookup on a
+ * {@code long} key, and label sets are hashed once per TS state rather than
+ * once per edge.
+ */
+final class ProductBuilder<S, Q, A, P> {
+    private final TransitionSystem<S, A, P> ts;
+    private final Automaton<Q, P> aut;
+    private final Interner<Q> autStates = new Interner<>();
+    private final Interner<Set<P>> labels = new Interner<>();
+    private final Map<S, Integer> labelIds = new HashMap<>();
+    private final Map<Long, Set<Q>> delta = new HashMap<>();
+
+    ProductBuilder(TransitionSystem<S, A, P> ts, Automaton<Q, P> aut) {
+        this.ts = ts;
+        this.aut = aut;
+    }
+
+    TransitionSystem<Pair<S, Q>, A, Q> build() {
+        CompactTransitionSystem<Pair<S, Q>, A, Q> product = new CompactTransitionSystem<>();
+        ts.getActions().forEach(product::addAction);
+        aut.getTransitions().keySet().forEach(product::addAtomicProposition);
+        aut.getInitialStates().forEach(product::addAtomicProposition);
+
+        Deque<Pair<S, Q>> worklist = new ArrayDeque<>();
+        for (S s : ts.getInitialStates()) {
+            for (Q q0 : aut.getInitialStates()) {
+                for (Q q : next(q0, s)) {
+                    Pair<S, Q> initial = new Pair<>(s, q);
+                    if (discover(product, initial)) {
+                        worklist.add(initial);
+                    }
+                    product.setInitial(initial, true);
+                }
+            }
+        }
+        Function<S, Map<A, Set<S>>> outgoing = Reachability.outgoingFunction(ts);
+        while (!worklist.isEmpty()) {
+            Pair<S, Q> state = worklist.poll();
+            for (Map.Entry<A, Set<S>> edges : outgoing.apply(state.first).entrySet()) {
+                for (S t : edges.getValue()) {
+                    for (Q p : next(state.second, t)) {
+                        Pair<S, Q> target = new Pair<>(t, p);
+                        if (discover(product, target)) {
+                            worklist.add(target);
+                        }
+                        product.addTransition(new Transition<>(state, edges.getKey(), target));
+                    }
+                }
+            }
+        }
+        return product;
+    }
+
+    private boolean discover(CompactTransitionSystem<Pair<S, Q>, A, Q> product, Pair<S, Q> state) {
+        if (product.getStates().contains(state)) {
+            return false;
+        }
+        product.addState(state);
+        product.addAtomicProposition(state.second);
+        product.addToLabel(state, state.second);
+        return true;
+    }
+
+    /**
+     * @return {@code delta(q, L(t))}.
+     */
+    private Set<Q> next(Q q, S t) {
+        int label = labelIds.computeIfAbsent(t, s -> labels.intern(ts.getLabel(s)));
+        long key = (long) autStates.intern(q) << 32 | label;
+        return delta.computeIfAbsent(key, k -> {
+            Set<Q> targets = aut.nextStates(q, labels.valueOf(label));
+            return targets == null ? Collections.emptySet() : targets;
+        });
+    }
+}
@@ -5,11 +5,19 @@ import il.ac.bgu.cs.fvm.programgraph.ProgramGraph;
 
 import java.util.*;
 
-public class ProgramGraphImplementation<L,A> implements ProgramGraph<L,A> {
+/**
+ * A mutable program graph. Transitions are indexed by source and target
+ * location, so listing the transitions that leave a location is a lookup and
+ * removing a location (with every transition that touches it) costs its
+ * degree.
+ */
+public class ProgramGraphImplementation<L,A> implements IndexedProgramGraph<L,A> {
     private Set<List<String>> variables ;
     private Set<L> initials;
     private Set<L> locations;
     private Set<PGTransition<L,A>> transitions;
+    private Map<L, Set<PGTransition<L,A>>> outgoing;
+    private Map<L, Set<PGTransition<L,A>>> incoming;
     private String name;
 
     ProgramGraphImplementation()
@@ -18,6 +26,8 @@ public class ProgramGraphImplementation<L,A> implements ProgramGraph<L,A> {
         initials = new HashSet<>();
         locations = new HashSet<>();
         transitions = new HashSet<>();
+        outgoing = new HashMap<>();
+        incoming = new HashMap<>();
     }
     @Override
     public void addInitalization(List<String> init) {
@@ -47,7 +57,10 @@ public class ProgramGraphImplementation<L,A> implements ProgramGraph<L,A> {
 
     @Override
     public void addTransition(PGTransition<L, A> t) {
-        transitions.add(t);
+        if (transitions.add(t)) {
+            outgoing.computeIfAbsent(t.getFrom(), k -> new HashSet<>()).add(t);
+            incoming.computeIfAbsent(t.getTo(), k -> new HashSet<>()).add(t);
+        }
     }
 
     @Override
@@ -57,12 +70,12 @@ public class ProgramGraphImplementation<L,A> implements ProgramGraph<L,A> {
 
     @Override
     public Set<L> getInitialLocations() {
-        return initials;
+        return Collections.unmodifiableSet(initials);
     }
 
     @Override
     public Set<L> getLocations() {
-        return locations;
+        return Collections.unmodifiableSet(locations);
     }
 
     @Override
@@ -72,17 +85,37 @@ public class ProgramGraphImplementation<L,A> implements ProgramGraph<L,A> {
 
     @Override
     public Set<PGTransition<L, A>> getTransitions() {
-        return transitions;
+        return Collections.unmodifiableSet(transitions);
     }
 
+    @Override
+    public Collection<PGTransition<L, A>> outgoing(L location) {
+        return Collections.unmodifiableSet(outgoing.getOrDefault(location, Collections.emptySet()));
+    }
+
+    /**
+     * Removes {@code l}, together with every transition entering or leaving it.
+     */
     @Override
     public void removeLocation(L l) {
-        locations.remove(l);
+        if (!locations.remove(l)) {
+            return;
+        }
+        initials.remove(l);
+        for (PGTransition<L, A> t : new ArrayList<>(outgoing(l))) {
+            removeTransition(t);
+        }
+        for (PGTransition<L, A> t : new ArrayList<>(incoming.getOrDefault(l, Collections.emptySet()))) {
+            removeTransition(t);
+        }
     }
 
     @Override
     public void removeTransition(PGTransition<L, A> t) {
-        transitions.remove(t);
+        if (transitions.remove(t)) {
+            unindex(outgoing, t.getFrom(), t);
+            unindex(incoming, t.getTo(), t);
+        }
     }
 
     @Override
@@ -91,11 +124,14 @@ public class ProgramGraphImplementation<L,A> implements ProgramGraph<L,A> {
     }
 
     private boolean hasLocation(L l) {
-        for (L location : locations) {
-            if (location.equals(l)) {
-                return true;
-            }
+        return locations.contains(l);
+    }
+
+    private void unindex(Map<L, Set<PGTransition<L, A>>> index, L l, PGTransition<L, A> t) {
+        Set<PGTransition<L, A>> ts = index.get(l);
+        ts.remove(t);
+        if (ts.isEmpty()) {
+            index.remove(l);
         }
-        return false;
     }
 }
@@ -0,0 +1,161 @@
+package il.ac.bgu.cs.fvm.impl;
+
+import il.ac.bgu.cs.fvm.exceptions.FVMException;
+import il.ac.bgu.cs.fvm.programgraph.ActionDef;
+import il.ac.bgu.cs.fvm.programgraph.ConditionDef;
+import il.ac.bgu.cs.fvm.programgraph.PGTransition;
+import il.ac.bgu.cs.fvm.programgraph.ProgramGraph;
+import il.ac.bgu.cs.fvm.util.Pair;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * The state space of a program graph: reachable {@code (location, evaluation)}
+ * pairs. Evaluations are hash-consed through a {@link ValuationPool}, so
+ * memory grows with the number of distinct evaluations rather than with the
+ * number of transitions. Actions and conditions are evaluated through
+ * {@link CompiledDefs}, so each text is matched to its definitions once and
+ * each condition is interpreted once per evaluation.
+ * <p>
+ * States are labelled with their location and with {@code "x = v"} for every
+ * variable {@code x} whose value is {@code v}.
+ */
+final class ProgramGraphUnfolder<L, A> implements StateSpace<Pair<L, Map<String, Object>>, A, String> {
+    private final ProgramGraph<L, A> pg;
+    private final Set<ActionDef> actionDefs;
+    private final Set<ConditionDef> conditionDefs;
+    private final ValuationPool valuations = new ValuationPool();
+    private final CompiledDefs defs;
+    private final Function<L, Collection<PGTransition<L, A>>> outgoing;
+
+    ProgramGraphUnfolder(ProgramGraph<L, A> pg, Set<ActionDef> actionDefs, Set<ConditionDef> conditionDefs) {
+        this(pg, actionDefs, conditionDefs, true);
+    }
+
+    /**
+     * @param memoize whether to hash-cons evaluations and memoize condition
+     *                results; off for searches that must not keep anything
+     *                per state.
+     */
+    ProgramGraphUnfolder(ProgramGraph<L, A> pg, Set<ActionDef> actionDefs, Set<ConditionDef> conditionDefs, boolean memoize) {
+        this.pg = pg;
+        this.actionDefs = actionDefs;
+        this.conditionDefs = conditionDefs;
+        this.outgoing = outgoingFunction(pg);
+        this.defs = new CompiledDefs(actionDefs, conditionDefs, valuations, memoize);
+    }
+
+    @Override
+    public Collection<Pair<L, Map<String, Object>>> initialStates() {
+        List<Pair<L, Map<String, Object>>> initials = new ArrayList<>();
+        for (Map<String, Object> initial : initialValuations(pg, actionDefs, valuations)) {
+            for (L location : pg.getInitialLocations()) {
+                initials.add(new Pair<>(location, initial));
+            }
+        }
+        return initials;
+    }
+
+    @Override
+    public void expand(Pair<L, Map<String, Object>> state, BiConsumer<A, Pair<L, Map<String, Object>>> successors) {
+        Valuation eval = state.second instanceof Valuation ? (Valuation) state.second : valuations.intern(state.second);
+        for (PGTransition<L, A> t : outgoing.apply(state.first)) {
+            if (!defs.condition(t.getCondition()).holds(eval)) {
+                continue;
+            }
+            Valuation effect = defs.action(t.getAction()).apply(eval);
+            if (effect != null) {
+                successors.accept(t.getAction(), new Pair<>(t.getTo(), effect));
+            }
+        }
+    }
+
+    @Override
+    public Collection<String> labels(Pair<L, Map<String, Object>> state) {
+        List<String> labels = new ArrayList<>(state.second.size() + 1);
+        labels.add(state.first.toString());
+        addVariableLabels(state.second, labels);
+        return labels;
+    }
+
+    /**
+     * The transitions leaving a location of {@code pg}: straight from the
+     * graph if it is indexed, otherwise from a map built in one pass.
+     */
+    static <L, A> Function<L, Collection<PGTransition<L, A>>> outgoingFunction(ProgramGraph<L, A> pg) {
+        if (pg instanceof IndexedProgramGraph) {
+            return ((IndexedProgramGraph<L, A>) pg)::outgoing;
+        }
+        Map<L, Collection<PGTransition<L, A>>> byLocation = new HashMap<>();
+        for (PGTransition<L, A> t : pg.getTransitions()) {
+            byLocation.computeIfAbsent(t.getFrom(), k -> new ArrayList<>()).add(t);
+        }
+        return l -> byLocation.getOrDefault(l, Collections.emptyList());
+    }
+
+    @Override
+    public long fingerprint(Pair<L, Map<String, Object>> state) {
+        return BitstateTable.mix((long) state.first.hashCode() << 32 ^ (state.second.hashCode() & 0xffffffffL));
+    }
+
+    static void addVariableLabels(Map<String, Object> eval, List<String> labels) {
+        for (Map.Entry<String, Object> entry : eval.entrySet()) {
+            labels.add(entry.getKey() + " = " + entry.getValue());
+        }
+    }
+
+    /**
+     * The evaluations produced by running each initialization of {@code pg}
+     * from the empty evaluation, or just the empty evaluation if it has none.
+     */
+    static List<Valuation> initialValuations(ProgramGraph<?, ?> pg, Set<ActionDef> actionDefs, ValuationPool valuations) {
+        List<Valuation> result = new ArrayList<>();
+        if (pg.getInitalizations().isEmpty()) {
+            result.add(valuations.intern(Collections.emptyMap()));
+        }
+        for (List<String> initialization : pg.getInitalizations()) {
+            result.add(valuations.intern(initialize(Collections.emptyMap(), initialization, actionDefs)));
+        }
+        return result;
+    }
+
+    static Map<String, Object> initialize(Map<String, Object> eval, List<String> initialization, Set<ActionDef> actionDefs) {
+        for (String action : initialization) {
+            eval = apply(actionDefs, eval, action);
+            if (eval == null) {
+                throw new FVMException("Initialization action cannot be applied: " + action);
+            }
+        }
+        return eval;
+    }
+
+    static boolean holds(Set<ConditionDef> conditionDefs, Map<String, Object> eval, String condition) {
+        for (ConditionDef def : conditionDefs) {
+            if (def.evaluate(eval, condition)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the evaluation after {@code action}, or {@code null} if the
+     * action is not enabled in {@code eval}.
+     */
+    static Map<String, Object> apply(Set<ActionDef> actionDefs, Map<String, Object> eval, Object action) {
+        for (ActionDef def : actionDefs) {
+            if (def.isMatchingAction(action)) {
+                return def.effect(eval, action);
+            }
+        }
+        throw new FVMException("No action definition matches " + action);
+    }
+}
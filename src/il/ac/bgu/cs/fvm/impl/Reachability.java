@@ -0,0 +1,71 @@
+package il.ac.bgu.cs.fvm.impl;
+
+import il.ac.bgu.cs.fvm.transitionsystem.Transition;
+import il.ac.bgu.cs.fvm.transitionsystem.TransitionSystem;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Forward reachability from the initial states of a transition system. Every
+ * state and transition is visited at most once, so it runs in O(|S|+|T|).
+ * {@link ImageComputer} provides the parallel, bit-set based variant.
+ */
+final class Reachability {
+
+    private Reachability() {
+    }
+
+    static <S> Set<S> reach(TransitionSystem<S, ?, ?> ts) {
+        Function<S, Set<S>> post = successorFunction(ts);
+        Set<S> visited = new HashSet<>(ts.getInitialStates());
+        Deque<S> worklist = new ArrayDeque<>(visited);
+        while (!worklist.isEmpty()) {
+            for (S next : post.apply(worklist.pop())) {
+                if (visited.add(next)) {
+                    worklist.push(next);
+                }
+            }
+        }
+        return visited;
+    }
+
+    /**
+     * Returns a read-only successor lookup for {@code ts}. Systems that are not
+     * indexed get a one-off adjacency map, so the lookup never scans
+     * {@link TransitionSystem#getTransitions()} per state.
+     */
+    static <S> Function<S, Set<S>> successorFunction(TransitionSystem<S, ?, ?> ts) {
+        if (ts instanceof IndexedTransitionSystem) {
+            return ((IndexedTransitionSystem<S, ?, ?>) ts)::successors;
+        }
+        Map<S, Set<S>> adjacency = new HashMap<>();
+        for (Transition<S, ?> t : ts.getTransitions()) {
+            adjacency.computeIfAbsent(t.getFrom(), k -> new HashSet<>()).add(t.getTo());
+        }
+        return s -> adjacency.getOrDefault(s, Collections.emptySet());
+    }
+
+    /**
+     * Returns a read-only lookup of the successors of a state grouped by
+     * action, building a one-off index for systems that are not indexed.
+     */
+    static <S, A> Function<S, Map<A, Set<S>>> outgoingFunction(TransitionSystem<S, A, ?> ts) {
+        if (ts instanceof IndexedTransitionSystem) {
+            return ((IndexedTransitionSystem<S, A, ?>) ts)::outgoing;
+        }
+        Map<S, Map<A, Set<S>>> adjacency = new HashMap<>();
+        for (Transition<S, A> t : ts.getTransitions()) {
+            adjacency.computeIfAbsent(t.getFrom(), k -> new HashMap<>())
+                    .computeIfAbsent(t.getAction(), k -> new HashSet<>())
+                    .add(t.getTo());
+        }
+        return s -> adjacency.getOrDefault(s, Collections.emptyMap());
+    }
+}
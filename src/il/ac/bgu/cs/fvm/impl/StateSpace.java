@@ -0,0 +1,42 @@
+package il.ac.bgu.cs.fvm.impl;
+
+import java.util.Collection;
+import java.util.function.BiConsumer;
+
+/**
+ * An implicit transition system: initial states, a successor function and a
+ * labeling function. {@link StateSpaceExplorer} turns one into an explicit
+ * {@link il.ac.bgu.cs.fvm.transitionsystem.TransitionSystem}. For parallel
+ * exploration, {@link #expand} and {@link #labels} must be safe to call from
+ * several threads at once.
+ */
+interface StateSpace<S, A, P> {
+
+    Collection<S> initialStates();
+
+    /**
+     * Reports every transition leaving {@code state} to {@code successors} as
+     * an (action, target) pair.
+     */
+    void expand(S state, BiConsumer<A, S> successors);
+
+    Collection<P> labels(S state);
+
+    /**
+     * A 64-bit hash of {@code state}, for searches that keep fingerprints
+     * instead of states. Spaces whose states carry more than 32 bits of hash
+     * should override this.
+     */
+    default long fingerprint(S state) {
+        return BitstateTable.mix(state.hashCode() + 0x9e3779b97f4a7c15L);
+    }
+
+    /**
+     * The number of values the space keeps on the heap to represent the
+     * states it has generated so far, such as interned variable values. A
+     * search that remembers states only by fingerprint still pays for these.
+     */
+    default long retainedValues() {
+        return 0;
+    }
+}
@@ -0,0 +1,187 @@
+package il.ac.bgu.cs.fvm.impl;
+
+import il.ac.bgu.cs.fvm.transitionsystem.Transition;
+import il.ac.bgu.cs.fvm.transitionsystem.TransitionSystem;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Function;
+
+/**
+ * Builds the reachable part of a {@link StateSpace} into a
+ * {@link TransitionSystemImplementation}.
+ * <p>
+ * The parallel mode runs breadth-first, one level at a time. Each level's
+ * frontier is split recursively across a fork-join pool, whose work stealing
+ * balances uneven out-degrees. Workers claim new states through a concurrent
+ * visited set. Each worker fills its own buffers of new states and
+ * transitions, and the buffers are merged into the result between levels. The
+ * result is the same transition system as the sequential mode produces.
+ * <p>
+ * Both modes can convert states on their way into the result, so a space may
+ * explore a compact internal representation and still return its public
+ * state type. Each reachable state is converted exactly once.
+ */
+final class StateSpaceExplorer {
+    static final int LEAF_SIZE = 64;
+
+    private StateSpaceExplorer() {
+    }
+
+    static <S, A, P> TransitionSystem<S, A, P> explore(StateSpace<S, A, P> space, String name) {
+        return explore(space, name, Function.identity());
+    }
+
+    static <S, T, A, P> TransitionSystem<T, A, P> explore(StateSpace<S, A, P> space, String name, Function<? super S, ? extends T> output) {
+        TransitionSystemImplementation<T, A, P> ts = new TransitionSystemImplementation<>();
+        ts.setName(name);
+        Map<S, T> visited = new HashMap<>();
+        Deque<S> worklist = new ArrayDeque<>();
+        for (S initial : space.initialStates()) {
+            T out = visited.get(initial);
+            if (out == null) {
+                out = discover(ts, space, initial, output);
+                visited.put(initial, out);
+                worklist.push(initial);
+            }
+            ts.setInitial(out, true);
+        }
+        while (!worklist.isEmpty()) {
+            S state = worklist.pop();
+            T from = visited.get(state);
+            space.expand(state, (action, next) -> {
+                T to = visited.get(next);
+                if (to == null) {
+                    to = discover(ts, space, next, output);
+                    visited.put(next, to);
+                    worklist.push(next);
+                }
+                ts.addAction(action);
+                ts.addTransition(new Transition<>(from, action, to));
+            });
+        }
+        return ts;
+    }
+
+    static <S, A, P> TransitionSystem<S, A, P> exploreInParallel(StateSpace<S, A, P> space, String name, int parallelism) {
+        return exploreInParallel(space, name, parallelism, Function.identity());
+    }
+
+    static <S, T, A, P> TransitionSystem<T, A, P> exploreInParallel(StateSpace<S, A, P> space, String name, int parallelism, Function<? super S, ? extends T> output) {
+        TransitionSystemImplementation<T, A, P> ts = new TransitionSystemImplementation<>();
+        ts.setName(name);
+        Set<S> visited = ConcurrentHashMap.newKeySet();
+        Map<S, T> outputs = new HashMap<>();
+        List<S> frontier = new ArrayList<>();
+        for (S initial : space.initialStates()) {
+            if (visited.add(initial)) {
+                outputs.put(initial, discover(ts, space, initial, output));
+                frontier.add(initial);
+            }
+            ts.setInitial(outputs.get(initial), true);
+        }
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            while (!frontier.isEmpty()) {
+                Level<S, A, P> level = pool.invoke(new ExpandTask<>(space, visited, frontier, 0, frontier.size()));
+                frontier = new ArrayList<>();
+                for (Level<S, A, P> part : level.parts) {
+                    for (int i = 0; i < part.states.size(); i++) {
+                        S state = part.states.get(i);
+                        T out = output.apply(state);
+                        outputs.put(state, out);
+                        ts.addState(out);
+                        for (P p : part.labels.get(i)) {
+                            ts.addAtomicProposition(p);
+                            ts.addToLabel(out, p);
+                        }
+                        frontier.add(state);
+                    }
+                }
+                for (Level<S, A, P> part : level.parts) {
+                    for (Transition<S, A> t : part.transitions) {
+                        ts.addAction(t.getAction());
+                        ts.addTransition(new Transition<>(outputs.get(t.getFrom()), t.getAction(), outputs.get(t.getTo())));
+                    }
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+        return ts;
+    }
+
+    private static <S, T, A, P> T discover(TransitionSystemImplementation<T, A, P> ts, StateSpace<S, A, P> space, S state, Function<? super S, ? extends T> output) {
+        T out = output.apply(state);
+        ts.addState(out);
+        for (P p : space.labels(state)) {
+            ts.addAtomicProposition(p);
+            ts.addToLabel(out, p);
+        }
+        return out;
+    }
+
+    /**
+     * What one worker found while expanding part of a frontier: newly claimed
+     * states with their labels, and the transitions leaving the expanded
+     * states. Inner nodes of the task tree only hold their children's parts.
+     */
+    private static final class Level<S, A, P> {
+        final List<Level<S, A, P>> parts = new ArrayList<>();
+        final List<S> states = new ArrayList<>();
+        final List<Collection<P>> labels = new ArrayList<>();
+        final List<Transition<S, A>> transitions = new ArrayList<>();
+    }
+
+    @SuppressWarnings("serial")
+    private static final class ExpandTask<S, A, P> extends RecursiveTask<Level<S, A, P>> {
+        private final StateSpace<S, A, P> space;
+        private final Set<S> visited;
+        private final List<S> frontier;
+        private final int from;
+        private final int to;
+
+        ExpandTask(StateSpace<S, A, P> space, Set<S> visited, List<S> frontier, int from, int to) {
+            this.space = space;
+            this.visited = visited;
+            this.frontier = frontier;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Level<S, A, P> compute() {
+            Level<S, A, P> result = new Level<>();
+            if (to - from <= LEAF_SIZE) {
+                result.parts.add(result);
+                for (int i = from; i < to; i++) {
+                    S state = frontier.get(i);
+                    space.expand(state, (action, next) -> {
+                        if (visited.add(next)) {
+                            result.states.add(next);
+                            result.labels.add(space.labels(next));
+                        }
+                        result.transitions.add(new Transition<>(state, action, next));
+                    });
+                }
+                return result;
+            }
+            int mid = (from + to) >>> 1;
+            ExpandTask<S, A, P> left = new ExpandTask<>(space, visited, frontier, from, mid);
+            left.fork();
+            Level<S, A, P> right = new ExpandTask<>(space, visited, frontier, mid, to).compute();
+            result.parts.addAll(left.join().parts);
+            result.parts.addAll(right.parts);
+            return result;
+        }
+    }
+}
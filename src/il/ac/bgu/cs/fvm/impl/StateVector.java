@@ -0,0 +1,124 @@
+package il.ac.bgu.cs.fvm.impl;
+
+import java.util.Arrays;
+
+/**
+ * A state packed into an {@code int[]} of slots, with a 64-bit Zobrist-style
+ * hash: the XOR of a mixed key per non-zero slot. Changing one slot updates
+ * the hash in O(1) through {@link #key}, so a successor costs a copy of the
+ * array plus one step per changed slot, and nothing is re-hashed from
+ * scratch.
+ * <p>
+ * Slots past the end of the array read as zero. Trailing zeros are trimmed,
+ * so equal states have equal arrays.
+ */
+final class StateVector {
+    private final int[] slots;
+    private final long hash;
+
+    private StateVector(int[] slots, long hash) {
+        this.slots = slots;
+        this.hash = hash;
+    }
+
+    static StateVector of(int[] slots) {
+        long hash = 0;
+        for (int i = 0; i < slots.length; i++) {
+            hash ^= key(i, slots[i]);
+        }
+        return new StateVector(trim(slots), hash);
+    }
+
+    int get(int slot) {
+        return slot < slots.length ? slots[slot] : 0;
+    }
+
+    int length() {
+        return slots.length;
+    }
+
+    /**
+     * The full 64-bit hash; {@link #hashCode()} folds it to 32 bits.
+     */
+    long fingerprint() {
+        return hash;
+    }
+
+    Builder toBuilder(int capacity) {
+        return new Builder(Arrays.copyOf(slots, Math.max(capacity, slots.length)), hash);
+    }
+
+    /**
+     * The contribution of {@code value} in {@code slot} to the hash. Zero
+     * slots contribute nothing.
+     */
+    static long key(int slot, int value) {
+        if (value == 0) {
+            return 0;
+        }
+        long z = ((long) slot << 32 | (value & 0xffffffffL)) + 0x9e3779b97f4a7c15L;
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    private static int[] trim(int[] slots) {
+        int length = slots.length;
+        while (length > 0 && slots[length - 1] == 0) {
+            length--;
+        }
+        return length == slots.length ? slots : Arrays.copyOf(slots, length);
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) (hash ^ (hash >>> 32));
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof StateVector)) {
+            return false;
+        }
+        StateVector other = (StateVector) obj;
+        return hash == other.hash && Arrays.equals(slots, other.slots);
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(slots);
+    }
+
+    /**
+     * A successor under construction. Each {@link #set} keeps the hash up to
+     * date.
+     */
+    static final class Builder {
+        private int[] slots;
+        private long hash;
+
+        private Builder(int[] slots, long hash) {
+            this.slots = slots;
+            this.hash = hash;
+        }
+
+        int get(int slot) {
+            return slot < slots.length ? slots[slot] : 0;
+        }
+
+        void set(int slot, int value) {
+            if (slot >= slots.length) {
+                slots = Arrays.copyOf(slots, Math.max(slot + 1, 2 * slots.length));
+            }
+            hash ^= key(slot, slots[slot]) ^ key(slot, value);
+            slots[slot] = value;
+        }
+
+        StateVector build() {
+            return new StateVector(trim(slots), hash);
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package il.ac.bgu.cs.fvm.impl;
+
+import il.ac.bgu.cs.fvm.circuits.Circuit;
+
+import java.util.Map;
+
+/**
+ * A circuit that can describe its logic as BDDs as well as evaluate it.
+ * {@link FvmFacadeImpl#transitionSystemFromCircuit(Circuit)} encodes such a
+ * circuit into a {@link SymbolicCircuitSystem} straight from these
+ * functions, without evaluating it on any concrete values, so the number of
+ * registers is bounded by the size of the BDDs rather than by the number of
+ * states.
+ * <p>
+ * Both methods get the BDD of each input port and register variable, by
+ * name, and return a BDD per register or output port built from them with
+ * the operations of {@code bdd}. A name the result does not map is constant
+ * false, as in {@link Circuit#updateRegisters}.
+ */
+public interface SymbolicCircuit extends Circuit {
+
+    Map<String, Integer> updateRegisters(Bdd bdd, Map<String, Integer> inputs, Map<String, Integer> registers);
+
+    Map<String, Integer> computeOutputs(Bdd bdd, Map<String, Integer> inputs, Map<String, Integer> registers);
+}
@@ -0,0 +1,852 @@
+package il.ac.bgu.cs.fvm.impl;
+
+import il.ac.bgu.cs.fvm.circuits.Circuit;
+import il.ac.bgu.cs.fvm.exceptions.FVMException;
+import il.ac.bgu.cs.fvm.exceptions.StateNotFoundException;
+import il.ac.bgu.cs.fvm.transitionsystem.Transition;
+import il.ac.bgu.cs.fvm.util.Pair;
+
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * The transition system of a sequential circuit, encoded with BDDs. It has
+ * the states, actions and labels that {@link CircuitUnfolder} builds: a state
+ * is a pair of input and register valuations, the action is the next input,
+ * and registers start all false.
+ * <p>
+ * Each input and register is a bit, and each bit has two BDD variables, its
+ * current value at level {@code 2b} and its next value at level
+ * {@code 2b + 1}, so that the transition relation
+ * {@code T = AND_j (r'_j <-> f_j(x, r))} stays small. Sets of states are
+ * BDDs over the current variables; the next inputs are unconstrained.
+ * Images are relational products: {@code post(S)} is
+ * {@code exists current. S & T} renamed back to the current variables, and
+ * {@code pre(S)} is {@code exists next. T & S[current := next]}. The
+ * reachable states are the least fixpoint of {@code post} from the initial
+ * states, found breadth-first with a frontier.
+ * <p>
+ * A {@link SymbolicCircuit} provides its register and output functions as
+ * BDDs directly; any other circuit is evaluated on every input and register
+ * valuation to build them, which limits it to {@link #MAX_ENUMERATED_BITS}
+ * bits.
+ * <p>
+ * State sets, including {@link #getStates()}, are views over BDDs. Their
+ * membership tests and sizes cost time linear in the number of bits, and
+ * their iterators enumerate the satisfying assignments lazily. A view keeps
+ * its BDD alive until the view itself is garbage collected. The system is
+ * read-only and not thread-safe.
+ */
+public class SymbolicCircuitSystem implements IndexedTransitionSystem<Pair<Map<String, Boolean>, Map<String, Boolean>>, Map<String, Boolean>, Object> {
+    static final int MAX_ENUMERATED_BITS = 20;
+
+    private final BitValuation.Layout inputs;
+    private final BitValuation.Layout registers;
+    private final BitValuation.Layout outputs;
+    private final int bits;
+    private final Bdd bdd;
+    private final int[] nextRegisters;
+    private final int[] outputFunctions;
+    private final int initial;
+    private final int transition;
+    private final int currentCube;
+    private final int nextCube;
+    private final int[] currentLevels;
+    private final int[] inputLevels;
+    private final Bdd.Renaming toCurrent;
+    private final Bdd.Renaming toNext;
+    private final Set<Object> atomicPropositions = new LinkedHashSet<>();
+    private final ReferenceQueue<StateSet> released = new ReferenceQueue<>();
+    private final Map<Reference<StateSet>, Integer> held = new HashMap<>();
+    private int reachable = -1;
+    private String name;
+
+    SymbolicCircuitSystem(Circuit circuit) {
+        inputs = new BitValuation.Layout(new ArrayList<>(circuit.getInputPortNames()));
+        registers = new BitValuation.Layout(new ArrayList<>(circuit.getRegisterNames()));
+        outputs = new BitValuation.Layout(new ArrayList<>(circuit.getOutputPortNames()));
+        bits = inputs.size() + registers.size();
+        bdd = new Bdd(2 * bits);
+        nextRegisters = new int[registers.size()];
+        outputFunctions = new int[outputs.size()];
+        if (circuit instanceof SymbolicCircuit) {
+            encode((SymbolicCircuit) circuit);
+        } else {
+            enumerate(circuit);
+        }
+        for (BitValuation.Layout layout : new BitValuation.Layout[]{inputs, registers, outputs}) {
+            for (int i = 0; i < layout.size(); i++) {
+                atomicPropositions.add(layout.name(i));
+            }
+        }
+
+        currentLevels = new int[bits];
+        int[] nextLevels = new int[bits];
+        int[] down = new int[2 * bits];
+        int[] up = new int[2 * bits];
+        for (int b = 0; b < bits; b++) {
+            currentLevels[b] = 2 * b;
+            nextLevels[b] = 2 * b + 1;
+            down[2 * b] = 2 * b + 1;
+            down[2 * b + 1] = 2 * b + 1;
+            up[2 * b] = 2 * b;
+            up[2 * b + 1] = 2 * b;
+        }
+        inputLevels = Arrays.copyOf(currentLevels, inputs.size());
+        currentCube = bdd.ref(bdd.cube(currentLevels));
+        nextCube = bdd.ref(bdd.cube(nextLevels));
+        toNext = bdd.renaming(down);
+        toCurrent = bdd.renaming(up);
+
+        int init = Bdd.TRUE;
+        for (int j = registers.size() - 1; j >= 0; j--) {
+            init = bdd.mk(current(inputs.size() + j), init, Bdd.FALSE);
+        }
+        initial = bdd.ref(init);
+
+        int t = Bdd.TRUE;
+        for (int j = registers.size() - 1; j >= 0; j--) {
+            int conjunct = bdd.biimp(bdd.var(next(inputs.size() + j)), nextRegisters[j]);
+            int conjunction = bdd.ref(bdd.and(conjunct, t));
+            bdd.deref(t);
+            t = conjunction;
+            bdd.maybeGc();
+        }
+        transition = t;
+    }
+
+    private static int current(int bit) {
+        return 2 * bit;
+    }
+
+    private static int next(int bit) {
+        return 2 * bit + 1;
+    }
+
+    private void encode(SymbolicCircuit circuit) {
+        Map<String, Integer> in = new LinkedHashMap<>();
+        for (int i = 0; i < inputs.size(); i++) {
+            in.put(inputs.name(i), bdd.var(current(i)));
+        }
+        Map<String, Integer> reg = new LinkedHashMap<>();
+        for (int j = 0; j < registers.size(); j++) {
+            reg.put(registers.name(j), bdd.var(current(inputs.size() + j)));
+        }
+        in = Collections.unmodifiableMap(in);
+        reg = Collections.unmodifiableMap(reg);
+        Map<String, Integer> next = circuit.updateRegisters(bdd, in, reg);
+        for (int j = 0; j < registers.size(); j++) {
+            nextRegisters[j] = bdd.ref(next.getOrDefault(registers.name(j), Bdd.FALSE));
+        }
+        Map<String, Integer> out = circuit.computeOutputs(bdd, in, reg);
+        for (int k = 0; k < outputs.size(); k++) {
+            outputFunctions[k] = bdd.ref(out.getOrDefault(outputs.name(k), Bdd.FALSE));
+        }
+    }
+
+    private void enumerate(Circuit circuit) {
+        if (bits > MAX_ENUMERATED_BITS) {
+            throw new FVMException("Cannot enumerate a circuit with " + bits + " input ports and registers;"
+                    + " implement " + SymbolicCircuit.class.getSimpleName() + " to encode it symbolically.");
+        }
+        int[] functions = enumerate(circuit, 0, new boolean[bits]);
+        for (int j = 0; j < registers.size(); j++) {
+            nextRegisters[j] = bdd.ref(functions[j]);
+        }
+        for (int k = 0; k < outputs.size(); k++) {
+            outputFunctions[k] = bdd.ref(functions[registers.size() + k]);
+        }
+    }
+
+    /**
+     * Builds every register and output function at once, bottom-up over the
+     * Shannon expansion on the bits from {@code bit} on, evaluating the
+     * circuit once per complete assignment.
+     */
+    private int[] enumerate(Circuit circuit, int bit, boolean[] values) {
+        if (bit == bits) {
+            BitValuation in = inputs.of(word(values, 0, inputs.size()));
+            BitValuation reg = registers.of(word(values, inputs.size(), registers.size()));
+            BitValuation next = registers.pack(circuit.updateRegisters(in, reg));
+            BitValuation out = outputs.pack(circuit.computeOutputs(in, reg));
+            int[] leaf = new int[registers.size() + outputs.size()];
+            for (int j = 0; j < registers.size(); j++) {
+                leaf[j] = next.bit(j) ? Bdd.TRUE : Bdd.FALSE;
+            }
+            for (int k = 0; k < outputs.size(); k++) {
+                leaf[registers.size() + k] = out.bit(k) ? Bdd.TRUE : Bdd.FALSE;
+            }
+            return leaf;
+        }
+        values[bit] = false;
+        int[] low = enumerate(circuit, bit + 1, values);
+        values[bit] = true;
+        int[] high = enumerate(circuit, bit + 1, values);
+        for (int f = 0; f < low.length; f++) {
+            low[f] = bdd.mk(current(bit), low[f], high[f]);
+        }
+        return low;
+    }
+
+    private static long[] word(boolean[] values, int from, int count) {
+        long[] word = new long[Math.max(1, (count + 63) >>> 6)];
+        for (int i = 0; i < count; i++) {
+            if (values[from + i]) {
+                word[i >>> 6] |= 1L << i;
+            }
+        }
+        return word;
+    }
+
+    private int image(int states) {
+        return bdd.replace(bdd.relProd(states, transition, currentCube), toCurrent);
+    }
+
+    private int preimage(int states) {
+        return bdd.relProd(transition, bdd.replace(states, toNext), nextCube);
+    }
+
+    private int reachable() {
+        if (reachable < 0) {
+            int reached = bdd.ref(initial);
+            int frontier = bdd.ref(initial);
+            while (frontier != Bdd.FALSE) {
+                int fresh = bdd.ref(bdd.and(image(frontier), bdd.not(reached)));
+                bdd.deref(frontier);
+                frontier = fresh;
+                int union = bdd.ref(bdd.or(reached, fresh));
+                bdd.deref(reached);
+                reached = union;
+                collect();
+            }
+            reachable = reached;
+        }
+        return reachable;
+    }
+
+    /**
+     * The reachable states, as {@link #getStates()}.
+     */
+    public Set<Pair<Map<String, Boolean>, Map<String, Boolean>>> reach() {
+        return getStates();
+    }
+
+    /**
+     * The successors of {@code states}, all of which must be states of this
+     * system. Sets this system returned are used as they are, without
+     * enumerating them.
+     */
+    public Set<Pair<Map<String, Boolean>, Map<String, Boolean>>> post(Set<?> states) {
+        return view(image(encode(states)));
+    }
+
+    public Set<Pair<Map<String, Boolean>, Map<String, Boolean>>> post(Set<?> states, Map<String, Boolean> action) {
+        return view(bdd.and(image(encode(states)), inputCube(action)));
+    }
+
+    /**
+     * The reachable predecessors of {@code states}; see {@link #post(Set)}.
+     */
+    public Set<Pair<Map<String, Boolean>, Map<String, Boolean>>> pre(Set<?> states) {
+        int r = reachable();
+        return view(bdd.and(preimage(encode(states)), r));
+    }
+
+    public Set<Pair<Map<String, Boolean>, Map<String, Boolean>>> pre(Set<?> states, Map<String, Boolean> action) {
+        int r = reachable();
+        return view(bdd.and(preimage(bdd.and(encode(states), inputCube(action))), r));
+    }
+
+    /**
+     * The number of states in {@code states}, which must be states of this
+     * system, for sets too large for {@link Set#size()}.
+     */
+    public double count(Set<?> states) {
+        return count(encode(states));
+    }
+
+    private double count(int states) {
+        return bdd.satCount(states) / Math.pow(2, bits);
+    }
+
+    /**
+     * The BDD of {@code states}. Throws {@link StateNotFoundException} if
+     * one of them is not a reachable state.
+     */
+    private int encode(Set<?> states) {
+        int r = reachable();
+        collect();
+        int node;
+        if (states instanceof StateSet && ((StateSet) states).owner() == this) {
+            node = ((StateSet) states).node;
+        } else {
+            node = Bdd.FALSE;
+            for (Object s : states) {
+                boolean[] values = assignment(s);
+                if (values == null) {
+                    throw new StateNotFoundException(s);
+                }
+                node = bdd.or(node, cube(values));
+            }
+        }
+        int outside = bdd.and(node, bdd.not(r));
+        if (outside != Bdd.FALSE) {
+            throw new StateNotFoundException(decode(new Assignments(outside, currentLevels).next()));
+        }
+        return node;
+    }
+
+    /**
+     * The value of each BDD variable in state {@code o}, or {@code null} if
+     * {@code o} is not a pair of an input and a register valuation.
+     */
+    private boolean[] assignment(Object o) {
+        if (!(o instanceof Pair)) {
+            return null;
+        }
+        Pair<?, ?> p = (Pair<?, ?>) o;
+        boolean[] values = new boolean[2 * bits];
+        return fill(p.getFirst(), inputs, 0, values) && fill(p.getSecond(), registers, inputs.size(), values) ? values : null;
+    }
+
+    private static boolean fill(Object o, BitValuation.Layout layout, int firstBit, boolean[] values) {
+        if (!(o instanceof Map) || ((Map<?, ?>) o).size() != layout.size()) {
+            return false;
+        }
+        Map<?, ?> map = (Map<?, ?>) o;
+        for (int i = 0; i < layout.size(); i++) {
+            Object value = map.get(layout.name(i));
+            if (!(value instanceof Boolean)) {
+                return false;
+            }
+            values[current(firstBit + i)] = (Boolean) value;
+        }
+        return true;
+    }
+
+    /**
+     * The assignment of {@code s} if it is a reachable state, else
+     * {@code null}.
+     */
+    private boolean[] find(Object s) {
+        boolean[] values = assignment(s);
+        return values != null && bdd.evaluate(reachable(), values) ? values : null;
+    }
+
+    private int cube(boolean[] values) {
+        return cube(values, bits);
+    }
+
+    /**
+     * The conjunction of the current variables of the first {@code count}
+     * bits, each at its value in {@code values}.
+     */
+    private int cube(boolean[] values, int count) {
+        int cube = Bdd.TRUE;
+        for (int b = count - 1; b >= 0; b--) {
+            int level = current(b);
+            cube = values[level] ? bdd.mk(level, Bdd.FALSE, cube) : bdd.mk(level, cube, Bdd.FALSE);
+        }
+        return cube;
+    }
+
+    /**
+     * The states whose input is {@code action}: none if it is not an input
+     * vector of this circuit.
+     */
+    private int inputCube(Object action) {
+        boolean[] values = new boolean[2 * bits];
+        return fill(action, inputs, 0, values) ? cube(values, inputs.size()) : Bdd.FALSE;
+    }
+
+    private Pair<Map<String, Boolean>, Map<String, Boolean>> decode(boolean[] bitValues) {
+        return new Pair<>(inputs.of(word(bitValues, 0, inputs.size())), registers.of(word(bitValues, inputs.size(), registers.size())));
+    }
+
+    private BitValuation successorRegisters(boolean[] values) {
+        boolean[] next = new boolean[registers.size()];
+        for (int j = 0; j < next.length; j++) {
+            next[j] = bdd.evaluate(nextRegisters[j], values);
+        }
+        return registers.of(word(next, 0, next.length));
+    }
+
+    private Set<Object> label(boolean[] values) {
+        Set<Object> label = new HashSet<>();
+        for (int i = 0; i < inputs.size(); i++) {
+            if (values[current(i)]) {
+                label.add(inputs.name(i));
+            }
+        }
+        for (int j = 0; j < registers.size(); j++) {
+            if (values[current(inputs.size() + j)]) {
+                label.add(registers.name(j));
+            }
+        }
+        for (int k = 0; k < outputs.size(); k++) {
+            if (bdd.evaluate(outputFunctions[k], values)) {
+                label.add(outputs.name(k));
+            }
+        }
+        return label;
+    }
+
+    private StateSet view(int node) {
+        StateSet set = new StateSet(bdd.ref(node));
+        held.put(new PhantomReference<>(set, released), node);
+        return set;
+    }
+
+    /**
+     * Releases the BDDs of views that have been garbage collected, and lets
+     * the BDD package collect. Only called when everything still needed is
+     * referenced.
+     */
+    private void collect() {
+        for (Reference<? extends StateSet> r = released.poll(); r != null; r = released.poll()) {
+            bdd.deref(held.remove(r));
+        }
+        bdd.maybeGc();
+    }
+
+    @Override
+    public Map<Map<String, Boolean>, Set<Pair<Map<String, Boolean>, Map<String, Boolean>>>> outgoing(Pair<Map<String, Boolean>, Map<String, Boolean>> s) {
+        boolean[] values = find(s);
+        if (values == null) {
+            return Collections.emptyMap();
+        }
+        BitValuation next = successorRegisters(values);
+        Map<Map<String, Boolean>, Set<Pair<Map<String, Boolean>, Map<String, Boolean>>>> result = new LinkedHashMap<>();
+        for (Map<String, Boolean> x : getActions()) {
+            result.put(x, Collections.singleton(new Pair<>(x, next)));
+        }
+        return result;
+    }
+
+    @Override
+    public Set<Pair<Map<String, Boolean>, Map<String, Boolean>>> successors(Pair<Map<String, Boolean>, Map<String, Boolean>> s) {
+        collect();
+        boolean[] values = find(s);
+        return view(values == null ? Bdd.FALSE : image(cube(values)));
+    }
+
+    @Override
+    public Set<Pair<Map<String, Boolean>, Map<String, Boolean>>> successors(Pair<Map<String, Boolean>, Map<String, Boolean>> s, Map<String, Boolean> a) {
+        collect();
+        boolean[] values = find(s);
+        return view(values == null ? Bdd.FALSE : bdd.and(image(cube(values)), inputCube(a)));
+    }
+
+    @Override
+    public Set<Pair<Map<String, Boolean>, Map<String, Boolean>>> predecessors(Pair<Map<String, Boolean>, Map<String, Boolean>> s) {
+        collect();
+        boolean[] values = find(s);
+        return view(values == null ? Bdd.FALSE : bdd.and(preimage(cube(values)), reachable()));
+    }
+
+    @Override
+    public Set<Pair<Map<String, Boolean>, Map<String, Boolean>>> predecessors(Pair<Map<String, Boolean>, Map<String, Boolean>> s, Map<String, Boolean> a) {
+        collect();
+        boolean[] values = find(s);
+        return view(values == null ? Bdd.FALSE : bdd.and(preimage(bdd.and(cube(values), inputCube(a))), reachable()));
+    }
+
+    @Override
+    public boolean containsState(Pair<Map<String, Boolean>, Map<String, Boolean>> s) {
+        return find(s) != null;
+    }
+
+    @Override
+    public boolean hasSuccessors(Pair<Map<String, Boolean>, Map<String, Boolean>> s) {
+        return find(s) != null;
+    }
+
+    @Override
+    public boolean hasTransition(Pair<Map<String, Boolean>, Map<String, Boolean>> from, Map<String, Boolean> a, Pair<Map<String, Boolean>, Map<String, Boolean>> to) {
+        boolean[] source = find(from);
+        boolean[] target = find(to);
+        boolean[] action = new boolean[2 * bits];
+        if (source == null || target == null || !fill(a, inputs, 0, action)) {
+            return false;
+        }
+        for (int i = 0; i < inputs.size(); i++) {
+            if (action[current(i)] != target[current(i)]) {
+                return false;
+            }
+        }
+        return successorRegisters(source).equals(decode(bitsOf(target)).getSecond());
+    }
+
+    /**
+     * The values of the current variables, by bit.
+     */
+    private boolean[] bitsOf(boolean[] values) {
+        boolean[] byBit = new boolean[bits];
+        for (int b = 0; b < bits; b++) {
+            byBit[b] = values[current(b)];
+        }
+        return byBit;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Every input vector, enumerated lazily.
+     */
+    @Override
+    public Set<Map<String, Boolean>> getActions() {
+        return new AbstractSet<Map<String, Boolean>>() {
+            @Override
+            public Iterator<Map<String, Boolean>> iterator() {
+                Assignments vectors = new Assignments(Bdd.TRUE, inputLevels);
+                return new Iterator<Map<String, Boolean>>() {
+                    @Override
+                    public boolean hasNext() {
+                        return vectors.hasNext();
+                    }
+
+                    @Override
+                    public Map<String, Boolean> next() {
+                        return inputs.of(word(vectors.next(), 0, inputs.size()));
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return inputs.size() >= 31 ? Integer.MAX_VALUE : 1 << inputs.size();
+            }
+
+            @Override
+            public boolean contains(Object o) {
+                return fill(o, inputs, 0, new boolean[2 * bits]);
+            }
+        };
+    }
+
+    @Override
+    public Set<Object> getAtomicPropositions() {
+        return Collections.unmodifiableSet(atomicPropositions);
+    }
+
+    @Override
+    public Set<Object> getLabel(Pair<Map<String, Boolean>, Map<String, Boolean>> s) {
+        boolean[] values = find(s);
+        if (values == null) {
+            throw new StateNotFoundException(s);
+        }
+        return label(values);
+    }
+
+    @Override
+    public Set<Pair<Map<String, Boolean>, Map<String, Boolean>>> getInitialStates() {
+        return view(initial);
+    }
+
+    @Override
+    public Set<Pair<Map<String, Boolean>, Map<String, Boolean>>> getStates() {
+        return view(reachable());
+    }
+
+    @Override
+    public Set<Transition<Pair<Map<String, Boolean>, Map<String, Boolean>>, Map<String, Boolean>>> getTransitions() {
+        Set<Pair<Map<String, Boolean>, Map<String, Boolean>>> states = getStates();
+        return new AbstractSet<Transition<Pair<Map<String, Boolean>, Map<String, Boolean>>, Map<String, Boolean>>>() {
+            @Override
+            public Iterator<Transition<Pair<Map<String, Boolean>, Map<String, Boolean>>, Map<String, Boolean>>> iterator() {
+                Assignments sources = new Assignments(((StateSet) states).node, currentLevels);
+                return new Iterator<Transition<Pair<Map<String, Boolean>, Map<String, Boolean>>, Map<String, Boolean>>>() {
+                    private Pair<Map<String, Boolean>, Map<String, Boolean>> from;
+                    private BitValuation next;
+                    private Iterator<Map<String, Boolean>> actions = Collections.emptyIterator();
+
+                    @Override
+                    public boolean hasNext() {
+                        return actions.hasNext() || sources.hasNext();
+                    }
+
+                    @Override
+                    public Transition<Pair<Map<String, Boolean>, Map<String, Boolean>>, Map<String, Boolean>> next() {
+                        if (!actions.hasNext()) {
+                            boolean[] byBit = sources.next();
+                            from = decode(byBit);
+                            next = successorRegisters(assignment(from));
+                            actions = getActions().iterator();
+                        }
+                        Map<String, Boolean> x = actions.next();
+                        return new Transition<>(from, x, new Pair<>(x, next));
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return (int) Math.min(count(reachable()) * getActions().size(), Integer.MAX_VALUE);
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public boolean contains(Object o) {
+                if (!(o instanceof Transition)) {
+                    return false;
+                }
+                Transition<Pair<Map<String, Boolean>, Map<String, Boolean>>, Map<String, Boolean>> t = (Transition<Pair<Map<String, Boolean>, Map<String, Boolean>>, Map<String, Boolean>>) o;
+                return hasTransition(t.getFrom(), t.getAction(), t.getTo());
+            }
+        };
+    }
+
+    @Override
+    public Map<Pair<Map<String, Boolean>, Map<String, Boolean>>, Set<Object>> getLabelingFunction() {
+        Set<Pair<Map<String, Boolean>, Map<String, Boolean>>> states = getStates();
+        return new AbstractMap<Pair<Map<String, Boolean>, Map<String, Boolean>>, Set<Object>>() {
+            @Override
+            public Set<Entry<Pair<Map<String, Boolean>, Map<String, Boolean>>, Set<Object>>> entrySet() {
+                return new AbstractSet<Entry<Pair<Map<String, Boolean>, Map<String, Boolean>>, Set<Object>>>() {
+                    @Override
+                    public Iterator<Entry<Pair<Map<String, Boolean>, Map<String, Boolean>>, Set<Object>>> iterator() {
+                        Iterator<Pair<Map<String, Boolean>, Map<String, Boolean>>> it = states.iterator();
+                        return new Iterator<Entry<Pair<Map<String, Boolean>, Map<String, Boolean>>, Set<Object>>>() {
+                            @Override
+                            public boolean hasNext() {
+                                return it.hasNext();
+                            }
+
+                            @Override
+                            public Entry<Pair<Map<String, Boolean>, Map<String, Boolean>>, Set<Object>> next() {
+                                Pair<Map<String, Boolean>, Map<String, Boolean>> s = it.next();
+                                return new SimpleImmutableEntry<>(s, label(assignment(s)));
+                            }
+                        };
+                    }
+
+                    @Override
+                    public int size() {
+                        return states.size();
+                    }
+                };
+            }
+
+            @Override
+            public boolean containsKey(Object key) {
+                return find(key) != null;
+            }
+
+            @Override
+            public Set<Object> get(Object key) {
+                boolean[] values = find(key);
+                return values == null ? null : label(values);
+            }
+        };
+    }
+
+    /**
+     * A set of states backed by a referenced BDD over the current variables.
+     */
+    private final class StateSet extends AbstractSet<Pair<Map<String, Boolean>, Map<String, Boolean>>> {
+        final int node;
+
+        StateSet(int node) {
+            this.node = node;
+        }
+
+        SymbolicCircuitSystem owner() {
+            return SymbolicCircuitSystem.this;
+        }
+
+        @Override
+        public Iterator<Pair<Map<String, Boolean>, Map<String, Boolean>>> iterator() {
+            Assignments states = new Assignments(node, currentLevels);
+            return new Iterator<Pair<Map<String, Boolean>, Map<String, Boolean>>>() {
+                @Override
+                public boolean hasNext() {
+                    return states.hasNext();
+                }
+
+                @Override
+                public Pair<Map<String, Boolean>, Map<String, Boolean>> next() {
+                    return decode(states.next());
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return (int) Math.min(count(node), Integer.MAX_VALUE);
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return node == Bdd.FALSE;
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            boolean[] values = assignment(o);
+            return values != null && bdd.evaluate(node, values);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (o instanceof StateSet && ((StateSet) o).owner() == owner()) {
+                return ((StateSet) o).node == node;
+            }
+            return super.equals(o);
+        }
+
+        @Override
+        public int hashCode() {
+            return super.hashCode();
+        }
+    }
+
+    /**
+     * The satisfying assignments of a BDD over the variables at
+     * {@code levels}, which must include every variable it tests, in
+     * lexicographic order. Each is the value of each of those variables, in
+     * the order of {@code levels}. The walk is a depth-first search that
+     * never enters the false terminal, so every descent ends in an
+     * assignment.
+     */
+    private final class Assignments implements Iterator<boolean[]> {
+        private final int[] levels;
+        private final boolean[] values;
+        private final int[] nodes;
+        private int depth;
+
+        Assignments(int root, int[] levels) {
+            this.levels = levels;
+            this.values = new boolean[levels.length];
+            this.nodes = new int[levels.length + 1];
+            nodes[0] = root;
+            if (root == Bdd.FALSE) {
+                depth = -1;
+            } else {
+                descend();
+            }
+        }
+
+        private int cofactor(int node, int level, boolean value) {
+            if (bdd.level(node) != level) {
+                return node;
+            }
+            return value ? bdd.high(node) : bdd.low(node);
+        }
+
+        private void descend() {
+            while (depth < levels.length) {
+                int low = cofactor(nodes[depth], levels[depth], false);
+                values[depth] = low == Bdd.FALSE;
+                nodes[depth + 1] = low == Bdd.FALSE ? cofactor(nodes[depth], levels[depth], true) : low;
+                depth++;
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return depth >= 0;
+        }
+
+        @Override
+        public boolean[] next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            boolean[] result = values.clone();
+            while (--depth >= 0) {
+                if (!values[depth]) {
+                    int high = cofactor(nodes[depth], levels[depth], true);
+                    if (high != Bdd.FALSE) {
+                        values[depth] = true;
+                        nodes[depth + 1] = high;
+                        depth++;
+                        descend();
+                        break;
+                    }
+                }
+            }
+            return result;
+        }
+    }
+
+    @Override
+    public void addAction(Map<String, Boolean> anAction) {
+        throw readOnly();
+    }
+
+    @Override
+    public void setInitial(Pair<Map<String, Boolean>, Map<String, Boolean>> aState, boolean isInitial) {
+        throw readOnly();
+    }
+
+    @Override
+    public void addState(Pair<Map<String, Boolean>, Map<String, Boolean>> state) {
+        throw readOnly();
+    }
+
+    @Override
+    public void addTransition(Transition<Pair<Map<String, Boolean>, Map<String, Boolean>>, Map<String, Boolean>> t) {
+        throw readOnly();
+    }
+
+    @Override
+    public void addAtomicProposition(Object p) {
+        throw readOnly();
+    }
+
+    @Override
+    public void addToLabel(Pair<Map<String, Boolean>, Map<String, Boolean>> s, Object l) {
+        throw readOnly();
+    }
+
+    @Override
+    public void removeAction(Map<String, Boolean> action) {
+        throw readOnly();
+    }
+
+    @Override
+    public void removeAtomicProposition(Object p) {
+        throw readOnly();
+    }
+
+    @Override
+    public void removeLabel(Pair<Map<String, Boolean>, Map<String, Boolean>> s, Object l) {
+        throw readOnly();
+    }
+
+    @Override
+    public void removeState(Pair<Map<String, Boolean>, Map<String, Boolean>> state) {
+        throw readOnly();
+    }
+
+    @Override
+    public void removeTransition(Transition<Pair<Map<String, Boolean>, Map<String, Boolean>>, Map<String, Boolean>> t) {
+        throw readOnly();
+    }
+
+    private UnsupportedOperationException readOnly() {
+        return new UnsupportedOperationException("A symbolic transition system is read-only.");
+    }
+}
@@ -4,12 +4,17 @@ import il.ac.bgu.cs.fvm.exceptions.*;
 import il.ac.bgu.cs.fvm.transitionsystem.Transition;
 import il.ac.bgu.cs.fvm.transitionsystem.TransitionSystem;
 
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
-public class TransitionSystemImplementation<STATE, ACTION, ATOMIC_PROPOSITION> implements TransitionSystem<STATE, ACTION, ATOMIC_PROPOSITION> {
+public class TransitionSystemImplementation<STATE, ACTION, ATOMIC_PROPOSITION> implements IndexedTransitionSystem<STATE, ACTION, ATOMIC_PROPOSITION> {
     private String name;
     private Set<STATE> states;
     private Set<STATE> initials;
@@ -17,14 +22,38 @@ public class TransitionSystemImplementation<STATE, ACTION, ATOMIC_PROPOSITION> i
     private Set<Transition<STATE, ACTION>> transFunction;
     private Set<ATOMIC_PROPOSITION> atomicProps;
     private Map<STATE, Set<ATOMIC_PROPOSITION>> tagFunction;
+    private Interner<STATE> stateIds;
+    private Interner<ATOMIC_PROPOSITION> propIds;
+    private BitSet atomicPropIds;
+    private List<BitSet> labels;
+    private List<BitSet> labelledStates;
+    private Map<STATE, Map<ACTION, Set<STATE>>> successors;
+    private Map<STATE, Map<ACTION, Set<STATE>>> predecessors;
+    private Map<ACTION, Integer> actionUse;
+    private Set<STATE> statesView;
+    private Set<STATE> initialsView;
+    private Set<ACTION> actionsView;
+    private Set<Transition<STATE, ACTION>> transitionsView;
 
     TransitionSystemImplementation() {
         states = new HashSet<>();
         initials = new HashSet<>();
         actions = new HashSet<>();
         transFunction = new HashSet<>();
-        atomicProps = new HashSet<>();
         tagFunction = new HashMap<>();
+        stateIds = new Interner<>();
+        propIds = new Interner<>();
+        atomicPropIds = new BitSet();
+        atomicProps = Collections.unmodifiableSet(new InternedSet<>(propIds, atomicPropIds));
+        labels = new ArrayList<>();
+        labelledStates = new ArrayList<>();
+        successors = new HashMap<>();
+        predecessors = new HashMap<>();
+        actionUse = new HashMap<>();
+        statesView = Collections.unmodifiableSet(states);
+        initialsView = Collections.unmodifiableSet(initials);
+        actionsView = Collections.unmodifiableSet(actions);
+        transitionsView = Collections.unmodifiableSet(transFunction);
     }
 
     @Override
@@ -56,8 +85,15 @@ public class TransitionSystemImplementation<STATE, ACTION, ATOMIC_PROPOSITION> i
 
     @Override
     public void addState(STATE state) {
-        states.add(state);
-        tagFunction.put(state, new HashSet<>());
+        if (states.add(state)) {
+            int id = stateIds.intern(state);
+            if (id == labels.size()) {
+                labels.add(new BitSet());
+            } else {
+                labels.set(id, new BitSet());
+            }
+            tagFunction.put(state, Collections.unmodifiableSet(new InternedSet<>(propIds, labels.get(id))));
+        }
     }
 
     @Override
@@ -65,25 +101,25 @@ public class TransitionSystemImplementation<STATE, ACTION, ATOMIC_PROPOSITION> i
         if (!(states.contains(t.getFrom()) && states.contains(t.getTo()) && actions.contains(t.getAction()))) {
             throw new InvalidTransitionException(t);
         }
-        transFunction.add(t);
+        if (transFunction.add(t)) {
+            link(successors, t.getFrom(), t.getAction(), t.getTo());
+            link(predecessors, t.getTo(), t.getAction(), t.getFrom());
+            actionUse.merge(t.getAction(), 1, Integer::sum);
+        }
     }
 
     @Override
     public Set<ACTION> getActions() {
-        return actions;
+        return actionsView;
     }
 
     @Override
     public void addAtomicProposition(ATOMIC_PROPOSITION p) {
-        boolean atomicExists = false;
-        for (ATOMIC_PROPOSITION atomic : atomicProps) {
-            if (atomic.equals(p)) {
-                atomicExists = true;
-            }
-        }
-        if (!atomicExists) {
-            atomicProps.add(p);
+        int id = propIds.intern(p);
+        if (id == labelledStates.size()) {
+            labelledStates.add(new BitSet());
         }
+        atomicPropIds.set(id);
     }
 
     @Override
@@ -93,21 +129,16 @@ public class TransitionSystemImplementation<STATE, ACTION, ATOMIC_PROPOSITION> i
 
     @Override
     public void addToLabel(STATE s, ATOMIC_PROPOSITION l) throws FVMException {
-        boolean isStateLabeledSame = false;
         if (!hasState(s)) {
             throw new StateNotFoundException("Cant add label to a state that is not in the set.");
         }
         if (!hasAtomic(l)) {
             throw new InvalidLablingPairException(s,l);
         }
-        for (ATOMIC_PROPOSITION atomic : tagFunction.get(s)) {
-            if (atomic.equals(l)) {
-                isStateLabeledSame = true;
-            }
-        }
-        if (!isStateLabeledSame) {
-            tagFunction.get(s).add(l);
-        }
+        int state = stateIds.idOf(s);
+        int atomic = propIds.idOf(l);
+        labels.get(state).set(atomic);
+        labelledStates.get(atomic).set(state);
     }
 
     @Override
@@ -120,34 +151,27 @@ public class TransitionSystemImplementation<STATE, ACTION, ATOMIC_PROPOSITION> i
 
     @Override
     public Set<STATE> getInitialStates() {
-        return initials;
+        return initialsView;
     }
 
     @Override
     public Map<STATE, Set<ATOMIC_PROPOSITION>> getLabelingFunction() {
-        return tagFunction;
+        return Collections.unmodifiableMap(tagFunction);
     }
 
     @Override
     public Set<STATE> getStates() {
-        return states;
+        return statesView;
     }
 
     @Override
     public Set<Transition<STATE, ACTION>> getTransitions() {
-        return transFunction;
+        return transitionsView;
     }
 
     @Override
     public void removeAction(ACTION action) throws FVMException {
-        boolean isUsed = false;
-        for (Transition trans : transFunction) {
-            if (trans.getAction().equals(action)) {
-                isUsed = true;
-                break;
-            }
-        }
-        if (!isUsed) {
+        if (!actionUse.containsKey(action)) {
             actions.remove(action);
         } else {
             throw new DeletionOfAttachedActionException(action, TransitionSystemPart.ACTIONS);
@@ -156,20 +180,14 @@ public class TransitionSystemImplementation<STATE, ACTION, ATOMIC_PROPOSITION> i
 
     @Override
     public void removeAtomicProposition(ATOMIC_PROPOSITION p) throws FVMException {
-        boolean isUsed = false;
-        for (STATE state : states) {
-            for (ATOMIC_PROPOSITION atomic : tagFunction.get(state)) {
-                if (atomic.equals(p)) {
-                    isUsed = true;
-                    break;
-                }
-            }
+        if (!hasAtomic(p)) {
+            return;
         }
-        if (!isUsed) {
-            atomicProps.remove(p);
-        } else {
+        int id = propIds.idOf(p);
+        if (!labelledStates.get(id).isEmpty()) {
             throw new DeletionOfAttachedAtomicPropositionException(p,TransitionSystemPart.ATOMIC_PROPOSITIONS);
         }
+        atomicPropIds.clear(id);
     }
 
     @Override
@@ -180,54 +198,222 @@ public class TransitionSystemImplementation<STATE, ACTION, ATOMIC_PROPOSITION> i
         if (!hasAtomic(l)) {
             throw new FVMException("Cant remove label that is not in the set.");
         }
-        for (ATOMIC_PROPOSITION atomic : tagFunction.get(s)) {
-            if (atomic.equals(l)) {
-                tagFunction.get(s).remove(l);
-                break;
-            }
-        }
-
+        int state = stateIds.idOf(s);
+        int atomic = propIds.idOf(l);
+        labels.get(state).clear(atomic);
+        labelledStates.get(atomic).clear(state);
     }
 
     @Override
     public void removeState(STATE state) throws FVMException {
-        for (Transition transition : transFunction) {
-            if (transition.getFrom().equals(state) || transition.getTo().equals(state)) {
-                throw new DeletionOfAttachedStateException(state,TransitionSystemPart.STATES);
-            }
+        if (!hasState(state)) {
+            return;
+        }
+        if (successors.containsKey(state) || predecessors.containsKey(state)) {
+            throw new DeletionOfAttachedStateException(state,TransitionSystemPart.STATES);
         }
-        if (tagFunction.get(state).size() != 0) {
+        if (!labels.get(stateIds.idOf(state)).isEmpty()) {
             throw new DeletionOfAttachedStateException(state, TransitionSystemPart.STATES);
         }
-        for (STATE initial : initials) {
-            if (initial.equals(state)) {
-                throw new DeletionOfAttachedStateException(state,TransitionSystemPart.STATES);
-            }
+        if (initials.contains(state)) {
+            throw new DeletionOfAttachedStateException(state,TransitionSystemPart.STATES);
         }
         states.remove(state);
         tagFunction.remove(state);
+        stateIds.remove(state);
     }
 
-    @Override
-    public void removeTransition(Transition<STATE, ACTION> t) {
-        transFunction.remove(t);
+    /**
+     * Removes {@code doomed} together with their transitions, labels and
+     * initial flags. Costs O(|doomed| + their degree), regardless of the size
+     * of the rest of the system. {@code doomed} may be a view of this system,
+     * such as {@link #getStates()}. The ids of removed states are reused by
+     * states added later.
+     */
+    public void removeStates(Collection<? extends STATE> doomed) {
+        for (STATE state : new ArrayList<>(doomed)) {
+            if (!hasState(state)) {
+                continue;
+            }
+            detach(state, successors.get(state), true);
+            detach(state, predecessors.get(state), false);
+            int id = stateIds.idOf(state);
+            BitSet label = labels.get(id);
+            for (int p = label.nextSetBit(0); p >= 0; p = label.nextSetBit(p + 1)) {
+                labelledStates.get(p).clear(id);
+            }
+            label.clear();
+            initials.remove(state);
+            removeState(state);
+        }
     }
 
-    private boolean hasState(STATE s) {
+    /**
+     * Keeps only the states in {@code keep}, removing all others as
+     * {@link #removeStates} does.
+     */
+    public void retainStates(Collection<? extends STATE> keep) {
+        List<STATE> doomed = new ArrayList<>();
         for (STATE state : states) {
-            if (state.equals(s)) {
-                return true;
+            if (!keep.contains(state)) {
+                doomed.add(state);
             }
         }
-        return false;
+        removeStates(doomed);
     }
 
-    private boolean hasAtomic(ATOMIC_PROPOSITION l) {
-        for (ATOMIC_PROPOSITION atomic : atomicProps) {
-            if (atomic.equals(l)) {
-                return true;
+    /**
+     * Removes every state that cannot be reached from an initial state.
+     */
+    public void removeUnreachable() {
+        retainStates(Reachability.reach(this));
+    }
+
+    private void detach(STATE state, Map<ACTION, Set<STATE>> byAction, boolean outgoing) {
+        if (byAction == null) {
+            return;
+        }
+        List<Transition<STATE, ACTION>> incident = new ArrayList<>();
+        for (Map.Entry<ACTION, Set<STATE>> entry : byAction.entrySet()) {
+            for (STATE other : entry.getValue()) {
+                incident.add(outgoing ? new Transition<>(state, entry.getKey(), other) : new Transition<>(other, entry.getKey(), state));
             }
         }
-        return false;
+        for (Transition<STATE, ACTION> t : incident) {
+            removeTransition(t);
+        }
+    }
+
+    @Override
+    public void removeTransition(Transition<STATE, ACTION> t) {
+        if (transFunction.remove(t)) {
+            unlink(successors, t.getFrom(), t.getAction(), t.getTo());
+            unlink(predecessors, t.getTo(), t.getAction(), t.getFrom());
+            actionUse.computeIfPresent(t.getAction(), (a, n) -> n == 1 ? null : n - 1);
+        }
+    }
+
+    @Override
+    public Set<STATE> successors(STATE s) {
+        return union(successors.get(s));
+    }
+
+    @Override
+    public Set<STATE> successors(STATE s, ACTION a) {
+        return lookup(successors.get(s), a);
+    }
+
+    @Override
+    public Set<STATE> predecessors(STATE s) {
+        return union(predecessors.get(s));
+    }
+
+    @Override
+    public Set<STATE> predecessors(STATE s, ACTION a) {
+        return lookup(predecessors.get(s), a);
+    }
+
+    @Override
+    public boolean containsState(STATE s) {
+        return states.contains(s);
+    }
+
+    @Override
+    public boolean hasSuccessors(STATE s) {
+        return successors.containsKey(s);
+    }
+
+    @Override
+    public boolean hasTransition(STATE from, ACTION a, STATE to) {
+        Map<ACTION, Set<STATE>> byAction = successors.get(from);
+        if (byAction == null) {
+            return false;
+        }
+        Set<STATE> targets = byAction.get(a);
+        return targets != null && targets.contains(to);
+    }
+
+    @Override
+    public Map<ACTION, Set<STATE>> outgoing(STATE s) {
+        Map<ACTION, Set<STATE>> byAction = successors.get(s);
+        return byAction == null ? Collections.emptyMap() : Collections.unmodifiableMap(byAction);
+    }
+
+    private static <S, A> void link(Map<S, Map<A, Set<S>>> index, S key, A action, S value) {
+        index.computeIfAbsent(key, k -> new HashMap<>())
+                .computeIfAbsent(action, k -> new HashSet<>())
+                .add(value);
+    }
+
+    private static <S, A> void unlink(Map<S, Map<A, Set<S>>> index, S key, A action, S value) {
+        Map<A, Set<S>> byAction = index.get(key);
+        Set<S> values = byAction.get(action);
+        values.remove(value);
+        if (values.isEmpty()) {
+            byAction.remove(action);
+            if (byAction.isEmpty()) {
+                index.remove(key);
+            }
+        }
+    }
+
+    private static <S, A> Set<S> union(Map<A, Set<S>> byAction) {
+        if (byAction == null) {
+            return Collections.emptySet();
+        }
+        if (byAction.size() == 1) {
+            return Collections.unmodifiableSet(byAction.values().iterator().next());
+        }
+        Set<S> result = new HashSet<>();
+        for (Set<S> values : byAction.values()) {
+            result.addAll(values);
+        }
+        return result;
+    }
+
+    private static <S, A> Set<S> lookup(Map<A, Set<S>> byAction, A action) {
+        if (byAction == null || !byAction.containsKey(action)) {
+            return Collections.emptySet();
+        }
+        return Collections.unmodifiableSet(byAction.get(action));
+    }
+
+    /**
+     * The states labelled with {@code p}, as a bit set over the ids given by
+     * {@link #stateId}. The returned set is a copy.
+     */
+    public BitSet statesSatisfying(ATOMIC_PROPOSITION p) {
+        return hasAtomic(p) ? (BitSet) labelledStates.get(propIds.idOf(p)).clone() : new BitSet();
+    }
+
+    /**
+     * Read-only view of the states labelled with {@code p}.
+     */
+    public Set<STATE> statesLabeledWith(ATOMIC_PROPOSITION p) {
+        if (!hasAtomic(p)) {
+            return Collections.emptySet();
+        }
+        return Collections.unmodifiableSet(new InternedSet<>(stateIds, labelledStates.get(propIds.idOf(p))));
+    }
+
+    /**
+     * @return the bit index used for {@code s} by {@link #statesSatisfying}, or -1.
+     * The index of a removed state may be given to a state added later.
+     */
+    public int stateId(STATE s) {
+        return hasState(s) ? stateIds.idOf(s) : -1;
+    }
+
+    public STATE stateOf(int id) {
+        return stateIds.valueOf(id);
+    }
+
+    private boolean hasState(STATE s) {
+        return states.contains(s);
+    }
+
+    private boolean hasAtomic(ATOMIC_PROPOSITION l) {
+        int id = propIds.idOf(l);
+        return id >= 0 && atomicPropIds.get(id);
     }
 }
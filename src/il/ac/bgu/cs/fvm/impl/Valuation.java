@@ -0,0 +1,58 @@
+package il.ac.bgu.cs.fvm.impl;
+
+import java.util.AbstractMap;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An immutable variable evaluation with a precomputed hash code. Instances are
+ * handed out by {@link ValuationPool}, so equal evaluations within one
+ * unfolding are the same object, and hashing or comparing them is O(1).
+ */
+final class Valuation extends AbstractMap<String, Object> {
+    private final Map<String, Object> values;
+    private final int hash;
+
+    Valuation(Map<String, Object> values) {
+        this.values = Collections.unmodifiableMap(new HashMap<>(values));
+        this.hash = this.values.hashCode();
+    }
+
+    @Override
+    public Object get(Object key) {
+        return values.get(key);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return values.containsKey(key);
+    }
+
+    @Override
+    public int size() {
+        return values.size();
+    }
+
+    @Override
+    public Set<Entry<String, Object>> entrySet() {
+        return values.entrySet();
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o == this) {
+            return true;
+        }
+        if (o instanceof Valuation && ((Valuation) o).hash != hash) {
+            return false;
+        }
+        return values.equals(o);
+    }
+}
@@ -0,0 +1,28 @@
+package il.ac.bgu.cs.fvm.impl;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Hash-conses variable evaluations: every distinct evaluation is stored once,
+ * as a {@link Valuation}. Safe to share between exploration threads.
+ */
+final class ValuationPool {
+    private final Map<Map<String, Object>, Valuation> pool = new ConcurrentHashMap<>();
+
+    Valuation intern(Map<String, Object> values) {
+        Valuation canonical = pool.get(values);
+        if (canonical == null) {
+            Valuation fresh = values instanceof Valuation ? (Valuation) values : new Valuation(values);
+            canonical = pool.putIfAbsent(fresh, fresh);
+            if (canonical == null) {
+                canonical = fresh;
+            }
+        }
+        return canonical;
+    }
+
+    int size() {
+        return pool.size();
+    }
+}